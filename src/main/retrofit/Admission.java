@@ -0,0 +1,39 @@
+package main.retrofit;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A call's place in a queue it must pass before it starts, completed once the call may go ahead.
+ * A call that gives up first {@link #withdraw withdraws}, which frees its place at once rather
+ * than when the queue next gets to it.
+ */
+final class Admission extends CompletableFuture<Void> {
+
+    /** Somewhere calls wait to start, such as a {@link SlotQueue}. */
+    interface Queue {
+        /** Forgets {@code admission}, which has been withdrawn. */
+        void remove(Admission admission);
+    }
+
+    private final Queue queue;
+    /** Orders admissions within a queue that is not first come, first served; lower goes first. */
+    final long rank;
+
+    Admission(Queue queue, long rank) {
+        this.queue = queue;
+        this.rank = rank;
+    }
+
+    /**
+     * Stops waiting, failing with {@code reason}. Returns false if the call had already been
+     * admitted, in which case it holds its place and must release it as usual.
+     */
+    boolean withdraw(IOException reason) {
+        if (completeExceptionally(reason)) {
+            queue.remove(this);
+            return true;
+        }
+        return isCompletedExceptionally();
+    }
+}
@@ -0,0 +1,92 @@
+package main.retrofit;
+
+import main.retrofit.okhttp.Batch;
+import okhttp3.Request;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A call of a {@link Batch} method. Instead of making its own request it hands its key to the
+ * method's {@link Batcher} and waits for its share of the batch's response.
+ */
+final class BatchedCall<T> implements Call<T> {
+
+    private final ServiceMethod<T, ?> serviceMethod;
+    private final Object[] args;
+    private final Batcher<Object, T> batcher;
+    private final AtomicBoolean executed = new AtomicBoolean();
+    private final AtomicBoolean delivered = new AtomicBoolean();
+    private volatile Callback<T> callback;
+    private volatile boolean canceled;
+
+    BatchedCall(ServiceMethod<T, ?> serviceMethod, Object[] args, Batcher<Object, T> batcher) {
+        this.serviceMethod = serviceMethod;
+        this.args = args;
+        this.batcher = batcher;
+    }
+
+    @Override
+    public Response<T> execute() throws IOException {
+        return Utils.awaitEnqueued(this);
+    }
+
+    @Override
+    public void enqueue(Callback<T> callback) {
+        if (callback == null) {
+            throw new NullPointerException("callback == null");
+        }
+        if (!executed.compareAndSet(false, true)) {
+            throw new IllegalStateException("Already executed.");
+        }
+        this.callback = callback;
+        // Pairs with cancel(): whichever runs second sees the other and fails the call.
+        if (canceled) {
+            fail(new IOException("Canceled"));
+            return;
+        }
+        batcher.add(args[0], this);
+    }
+
+    void deliver(Response<T> response) {
+        if (delivered.compareAndSet(false, true)) {
+            callback.onResponse(this, response);
+        }
+    }
+
+    void fail(Throwable failure) {
+        Callback<T> target = callback;
+        if (target != null && delivered.compareAndSet(false, true)) {
+            target.onFailure(this, failure);
+        }
+    }
+
+    @Override
+    public boolean isExecuted() {
+        return executed.get();
+    }
+
+    /** Fails this call at once. Its key is still sent if the batch has gone out or others want it. */
+    @Override
+    public void cancel() {
+        canceled = true;
+        batcher.remove(args[0], this);
+        fail(new IOException("Canceled"));
+    }
+
+    @Override
+    public boolean isCanceled() {
+        return canceled;
+    }
+
+    @Override
+    public Call<T> clone() {
+        return new BatchedCall<>(serviceMethod, args, batcher);
+    }
+
+    /** Returns the request this call would make on its own; the key is sent in a batch instead. */
+    @Override
+    public Request request() {
+        return new OkHttpCall(serviceMethod, args).request();
+    }
+}
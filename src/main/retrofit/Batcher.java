@@ -0,0 +1,167 @@
+package main.retrofit;
+
+import main.retrofit.okhttp.Batch;
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gathers the keys of one {@link Batch} method's calls and sends them through its batch method,
+ * then hands each call its key's share of the response. Keys are gathered until the window closes
+ * or the batch is full, whichever comes first; a call for a key that is already waiting joins it.
+ */
+final class Batcher<K, V> {
+
+    final Retrofit retrofit;
+    private final Method batchMethod;
+    private final long windowNanos;
+    private final int maxKeys;
+    /** The calls of the batch being gathered, by key; null while none is. */
+    private LinkedHashMap<K, List<BatchedCall<V>>> gathering;
+    private Timers.Timeout window;
+
+    Batcher(Retrofit retrofit, Method batchMethod, long windowMillis, int maxKeys) {
+        if (windowMillis < 0) {
+            throw new IllegalArgumentException("@Batch windowMillis must not be negative.");
+        }
+        if (maxKeys < 1) {
+            throw new IllegalArgumentException("@Batch maxKeys must be at least 1.");
+        }
+        this.retrofit = retrofit;
+        this.batchMethod = batchMethod;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.maxKeys = maxKeys;
+    }
+
+    /** Returns a batcher with the same settings that sends its batches through {@code retrofit}. */
+    Batcher<K, V> copy(Retrofit retrofit) {
+        return new Batcher<>(retrofit, batchMethod, TimeUnit.NANOSECONDS.toMillis(windowNanos), maxKeys);
+    }
+
+    void add(K key, BatchedCall<V> call) {
+        LinkedHashMap<K, List<BatchedCall<V>>> full = null;
+        synchronized (this) {
+            if (gathering == null) {
+                final LinkedHashMap<K, List<BatchedCall<V>>> started = new LinkedHashMap<>();
+                gathering = started;
+                window = Timers.schedule(() -> closeWindow(started), windowNanos);
+            }
+            gathering.computeIfAbsent(key, k -> new ArrayList<>(1)).add(call);
+            if (gathering.size() >= maxKeys) {
+                full = gathering;
+                gathering = null;
+                window.cancel();
+            }
+        }
+        if (full != null) {
+            send(full);
+        }
+    }
+
+    /** Takes back a canceled call that has not been sent, and its key if no other call wants it. */
+    synchronized void remove(K key, BatchedCall<V> call) {
+        if (gathering == null) {
+            return;
+        }
+        List<BatchedCall<V>> calls = gathering.get(key);
+        if (calls != null && calls.remove(call) && calls.isEmpty()) {
+            gathering.remove(key);
+        }
+    }
+
+    /**
+     * Sends {@code batch} when its window closes. A timer that fires just as its batch fills up
+     * cannot be canceled in time; by then the batch has been sent, and the one being gathered is
+     * left to its own timer.
+     */
+    private void closeWindow(LinkedHashMap<K, List<BatchedCall<V>>> batch) {
+        synchronized (this) {
+            if (gathering != batch) {
+                return;
+            }
+            gathering = null;
+        }
+        if (!batch.isEmpty()) {
+            send(batch);
+        }
+    }
+
+    private void send(final Map<K, List<BatchedCall<V>>> batch) {
+        Call<Map<K, V>> call;
+        try {
+            ServiceMethod<Map<K, V>, ?> method =
+                    (ServiceMethod<Map<K, V>, ?>) retrofit.loadServiceMethod(batchMethod);
+            call = method.call(new Object[]{new ArrayList<>(batch.keySet())});
+        } catch (RuntimeException e) {
+            failAll(batch, e);
+            return;
+        }
+        call.enqueue(new Callback<Map<K, V>>() {
+            @Override
+            public void onResponse(Call<Map<K, V>> call, Response<Map<K, V>> response) {
+                if (!response.isSuccessful()) {
+                    deliverError(batch, response);
+                    return;
+                }
+                Map<K, V> values = response.body();
+                for (Map.Entry<K, List<BatchedCall<V>>> entry : batch.entrySet()) {
+                    V value = values != null ? values.get(entry.getKey()) : null;
+                    Response<V> share = value != null
+                            ? new Response<>(response.raw(), value, null)
+                            : notFound(response.raw());
+                    for (BatchedCall<V> waiting : entry.getValue()) {
+                        waiting.deliver(share);
+                    }
+                }
+            }
+
+            @Override
+            public void onFailure(Call<Map<K, V>> call, Throwable t) {
+                failAll(batch, t);
+            }
+        });
+    }
+
+    /** Gives every call its own copy of the batch's error body, which can only be read once. */
+    private void deliverError(Map<K, List<BatchedCall<V>>> batch, Response<Map<K, V>> response) {
+        ResponseBody errorBody = response.errorBody();
+        MediaType contentType = errorBody != null ? errorBody.contentType() : null;
+        byte[] bytes;
+        try {
+            bytes = errorBody != null ? errorBody.bytes() : new byte[0];
+        } catch (IOException e) {
+            failAll(batch, e);
+            return;
+        }
+        for (List<BatchedCall<V>> calls : batch.values()) {
+            for (BatchedCall<V> waiting : calls) {
+                ResponseBody copy = ResponseBody.create(contentType, bytes);
+                waiting.deliver(new Response<>(response.raw(), null, copy));
+            }
+        }
+    }
+
+    private Response<V> notFound(okhttp3.Response batchResponse) {
+        okhttp3.Response raw = batchResponse.newBuilder()
+                .code(404)
+                .message("Not Found in batch")
+                .body(null)
+                .build();
+        return new Response<>(raw, null, ResponseBody.create(null, new byte[0]));
+    }
+
+    private void failAll(Map<K, List<BatchedCall<V>>> batch, Throwable failure) {
+        for (List<BatchedCall<V>> calls : batch.values()) {
+            for (BatchedCall<V> waiting : calls) {
+                waiting.fail(failure);
+            }
+        }
+    }
+}
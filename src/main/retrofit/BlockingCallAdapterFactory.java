@@ -0,0 +1,104 @@
+package main.retrofit;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Future;
+
+/**
+ * Adapts service methods declared to return {@code T} or {@code Response<T>} directly by executing
+ * the call on the calling thread. Only used in {@link Retrofit.Builder#virtualThreads} mode, where
+ * the caller is expected to be on a virtual thread; nothing here moves the call onto one. A non-2xx
+ * response throws {@link HttpException} for {@code T}, and I/O failures are rethrown as
+ * {@link UncheckedIOException}. Types that stand for a call still to complete, such as
+ * {@code Future<T>}, are not bodies and are left to other factories.
+ */
+final class BlockingCallAdapterFactory extends CallAdapter.Factory {
+
+    static final BlockingCallAdapterFactory INSTANCE = new BlockingCallAdapterFactory();
+
+    private static final Class<?>[] ASYNCHRONOUS_TYPES = {
+            Call.class, Future.class, CompletionStage.class, Flow.Publisher.class
+    };
+
+    @Override
+    public CallAdapter<?, ?> get(Type returnType, Annotation[] annotations, Retrofit retrofit) {
+        Class<?> rawType = getRawType(returnType);
+        if (rawType.isPrimitive() || isAsynchronous(rawType)) {
+            return null;
+        }
+        if (rawType != Response.class) {
+            return new BodyCallAdapter<>(returnType);
+        }
+        if (!(returnType instanceof ParameterizedType)) {
+            throw new IllegalArgumentException("Response must be parameterized"
+                    + " as Response<Foo> or Response<? extends Foo>");
+        }
+        return new ResponseCallAdapter<>(getParameterUpperBound(0, (ParameterizedType) returnType));
+    }
+
+    private static boolean isAsynchronous(Class<?> rawType) {
+        for (Class<?> type : ASYNCHRONOUS_TYPES) {
+            if (type.isAssignableFrom(rawType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Whether {@code adapter} executes calls itself rather than handing out a call-like type. */
+    static boolean isBlocking(CallAdapter<?, ?> adapter) {
+        return adapter instanceof BodyCallAdapter || adapter instanceof ResponseCallAdapter;
+    }
+
+    private static <R> Response<R> execute(Call<R> call) {
+        try {
+            return call.execute();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static final class BodyCallAdapter<R> implements CallAdapter<R, R> {
+        private final Type responseType;
+
+        BodyCallAdapter(Type responseType) {
+            this.responseType = responseType;
+        }
+
+        @Override
+        public Type responseType() {
+            return responseType;
+        }
+
+        @Override
+        public R adapt(Call<R> call) {
+            Response<R> response = execute(call);
+            if (!response.isSuccessful()) {
+                throw new HttpException(response);
+            }
+            return response.body();
+        }
+    }
+
+    private static final class ResponseCallAdapter<R> implements CallAdapter<R, Response<R>> {
+        private final Type responseType;
+
+        ResponseCallAdapter(Type responseType) {
+            this.responseType = responseType;
+        }
+
+        @Override
+        public Type responseType() {
+            return responseType;
+        }
+
+        @Override
+        public Response<R> adapt(Call<R> call) {
+            return execute(call);
+        }
+    }
+}
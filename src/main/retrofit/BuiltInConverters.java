@@ -47,7 +47,10 @@ public final class BuiltInConverters extends Converter.Factory {
   @Override
   public Converter<?, RequestBody> requestBodyConverter(Type type,
                                                         Annotation[] parameterAnnotations, Annotation[] methodAnnotations, Retrofit retrofit) {
-    return RequestBodyConverter.INSTANCE;
+    if (RequestBody.class.isAssignableFrom(Utils.getRawType(type))) {
+      return RequestBodyConverter.INSTANCE;
+    }
+    return null;
   }
 
   static final class RequestBodyConverter implements Converter<RequestBody, RequestBody> {
@@ -58,6 +61,14 @@ public final class BuiltInConverters extends Converter.Factory {
     }
   }
 
+  static final class ToStringConverter implements Converter<Object, String> {
+    static final ToStringConverter INSTANCE = new ToStringConverter();
+
+    @Override public String convert(Object value) {
+      return value.toString();
+    }
+  }
+
   static final class ResponseBodyConverter implements Converter<ResponseBody, ResponseBody> {
     static final ResponseBodyConverter INSTANCE = new ResponseBodyConverter();
 
@@ -0,0 +1,288 @@
+package main.retrofit;
+
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Shares one network call between concurrent calls that build equal requests, for service methods
+ * marked {@link main.retrofit.okhttp.SingleFlight} or every GET when
+ * {@link Retrofit.Builder#singleFlight} is on. Requests are equal when their method, URL and headers
+ * are. The first caller starts a flight; later callers join it until its response arrives, and then
+ * each gets a copy of the response with the body buffered once. The network call is cancelled only
+ * once every caller that joined it has cancelled.
+ *
+ * <p>A flight started by {@code execute()} runs on the dispatcher's executor but, like any
+ * synchronous call, does not count against the client's request limits. Its leader only waits for
+ * the outcome, so cancelling it or passing its deadline returns at once even while others are still
+ * joined. One started by {@code enqueue()} goes through the client's dispatcher.
+ */
+final class CallCoalescer {
+
+    private final ConcurrentHashMap<String, Flight> flights = new ConcurrentHashMap<>();
+
+    okhttp3.Call newCall(OkHttpClient client, Request request) {
+        return new CoalescedCall(client, request);
+    }
+
+    /**
+     * Joins the flight for {@code request}, or opens one led by {@code caller} if there is none. The
+     * leader of a new flight must {@link Flight#execute execute} or {@link Flight#enqueue enqueue} it.
+     */
+    private Flight join(OkHttpClient client, Request request, CoalescedCall caller) {
+        String key = request.method() + ' ' + request.url() + '\n' + request.headers();
+        while (true) {
+            Flight flight = flights.get(key);
+            if (flight == null) {
+                // Published already joined by its leader, so a joiner that cancels at once cannot
+                // close it before it starts.
+                Flight created = new Flight(key, client.newCall(request), caller);
+                flight = flights.putIfAbsent(key, created);
+                if (flight == null) {
+                    return created;
+                }
+            }
+            if (flight.join()) {
+                return flight;
+            }
+            // It completed or was abandoned while we looked; it has already left the map.
+        }
+    }
+
+    private final class Flight implements Callback {
+        final String key;
+        final okhttp3.Call call;
+        final CoalescedCall leader;
+        final CompletableFuture<SharedResponse> result = new CompletableFuture<>();
+        private int waiters = 1;
+        private boolean closed;
+
+        Flight(String key, okhttp3.Call call, CoalescedCall leader) {
+            this.key = key;
+            this.call = call;
+            this.leader = leader;
+        }
+
+        void enqueue() {
+            call.enqueue(this);
+        }
+
+        /** Executes the network call on the dispatcher's executor, outside its request limits. */
+        void execute(OkHttpClient client) {
+            try {
+                client.dispatcher().executorService().execute(this::run);
+            } catch (RuntimeException e) {
+                // Such as an executor that was shut down.
+                close();
+                result.completeExceptionally(e);
+            }
+        }
+
+        private void run() {
+            Response response;
+            try {
+                response = call.execute();
+            } catch (IOException e) {
+                onFailure(call, e);
+                return;
+            } catch (Throwable t) {
+                close();
+                result.completeExceptionally(t);
+                if (t instanceof Error) {
+                    throw (Error) t;
+                }
+                return;
+            }
+            onResponse(call, response);
+        }
+
+        synchronized boolean join() {
+            if (closed) {
+                return false;
+            }
+            waiters++;
+            return true;
+        }
+
+        void leave() {
+            synchronized (this) {
+                if (closed || --waiters > 0) {
+                    return;
+                }
+                closed = true;
+            }
+            flights.remove(key, this);
+            call.cancel();
+        }
+
+        private void close() {
+            synchronized (this) {
+                closed = true;
+            }
+            flights.remove(key, this);
+        }
+
+        @Override
+        public void onFailure(okhttp3.Call call, IOException e) {
+            close();
+            result.completeExceptionally(e);
+        }
+
+        @Override
+        public void onResponse(okhttp3.Call call, Response response) {
+            close();
+            try (ResponseBody body = response.body()) {
+                result.complete(new SharedResponse(response, body.contentType() != null
+                        ? body.contentType().toString() : null, body.bytes()));
+            } catch (IOException e) {
+                result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static final class SharedResponse {
+        final Response response;
+        final String contentType;
+        final byte[] body;
+
+        SharedResponse(Response response, String contentType, byte[] body) {
+            this.response = response;
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        Response copyFor(Request request) {
+            return response.newBuilder()
+                    .request(request)
+                    .body(ResponseBody.create(contentType != null
+                            ? okhttp3.MediaType.parse(contentType) : null, body))
+                    .build();
+        }
+    }
+
+    /** One caller's view of a flight. */
+    private final class CoalescedCall implements okhttp3.Call {
+        private final OkHttpClient client;
+        private final Request request;
+        private final AtomicBoolean executed = new AtomicBoolean();
+        private final CompletableFuture<Response> outcome = new CompletableFuture<>();
+        private volatile Flight flight;
+        private volatile boolean canceled;
+
+        CoalescedCall(OkHttpClient client, Request request) {
+            this.client = client;
+            this.request = request;
+        }
+
+        @Override
+        public Request request() {
+            return request;
+        }
+
+        /** Joins a flight, and returns it if this call leads it and must start it; null otherwise. */
+        private Flight start() {
+            if (!executed.compareAndSet(false, true)) {
+                throw new IllegalStateException("Already Executed");
+            }
+            if (canceled) {
+                outcome.completeExceptionally(new IOException("Canceled"));
+                return null;
+            }
+            Flight joined = join(client, request, this);
+            flight = joined;
+            joined.result.whenComplete((shared, failure) -> {
+                if (failure != null) {
+                    outcome.completeExceptionally(failure);
+                } else {
+                    outcome.complete(shared.copyFor(request));
+                }
+            });
+            if (canceled) {
+                cancel(joined);
+            }
+            return joined.leader == this ? joined : null;
+        }
+
+        @Override
+        public Response execute() throws IOException {
+            Flight led = start();
+            if (led != null) {
+                led.execute(client);
+            }
+            try {
+                return outcome.get();
+            } catch (InterruptedException e) {
+                cancel();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IOException(cause);
+            }
+        }
+
+        @Override
+        public void enqueue(final Callback responseCallback) {
+            Flight led = start();
+            if (led != null) {
+                led.enqueue();
+            }
+            outcome.whenComplete((response, failure) -> {
+                if (failure == null) {
+                    try {
+                        responseCallback.onResponse(this, response);
+                    } catch (IOException e) {
+                        responseCallback.onFailure(this, e);
+                    }
+                } else {
+                    responseCallback.onFailure(this, failure instanceof IOException
+                            ? (IOException) failure : new IOException(failure));
+                }
+            });
+        }
+
+        @Override
+        public void cancel() {
+            canceled = true;
+            Flight joined = flight;
+            if (joined != null) {
+                cancel(joined);
+            }
+        }
+
+        /** Leaves {@code joined} once, however many times cancel races with start. */
+        private void cancel(Flight joined) {
+            if (outcome.completeExceptionally(new IOException("Canceled"))) {
+                joined.leave();
+            }
+        }
+
+        @Override
+        public boolean isExecuted() {
+            return executed.get();
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return canceled;
+        }
+    }
+}
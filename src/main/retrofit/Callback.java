@@ -20,4 +20,20 @@ public interface Callback<T> {
   void onResponse(Call<T> call, Response<T> response);
 
   void onFailure(Call<T> call, Throwable t);
+
+  /**
+   * Invoked as each attempt of a {@link main.retrofit.okhttp.Retry retried} call starts, numbered
+   * from 1. This may run on Retrofit's timer thread and must not block.
+   */
+  default void onAttempt(Call<T> call, int attempt) {
+  }
+
+  /**
+   * Invoked when {@code attempt} failed, with either a {@code response} or a {@code failure}, and
+   * will be retried after {@code delayMillis}. Only the final outcome is delivered to
+   * {@link #onResponse} or {@link #onFailure}.
+   */
+  default void onRetry(Call<T> call, int attempt, Response<T> response, Throwable failure,
+      long delayMillis) {
+  }
 }
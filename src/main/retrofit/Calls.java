@@ -0,0 +1,240 @@
+package main.retrofit;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/** Utilities for running many calls at once. */
+public final class Calls {
+
+    private Calls() {
+    }
+
+    /** What {@link #executeAll(Collection, int, OnFailure)} does when a call fails. */
+    public enum OnFailure {
+        /** Keeps going; the failure is delivered like any other outcome. */
+        CONTINUE,
+        /** Cancels the remaining calls and throws the failure from the stream. */
+        ABORT
+    }
+
+    /** How one call ended: with a response, which may be an HTTP error, or with a failure. */
+    public static final class Outcome<T> {
+        private final Call<T> call;
+        private final Response<T> response;
+        private final Throwable failure;
+
+        Outcome(Call<T> call, Response<T> response, Throwable failure) {
+            this.call = call;
+            this.response = response;
+            this.failure = failure;
+        }
+
+        public Call<T> call() {
+            return call;
+        }
+
+        /** Returns the response, or null if the call failed. */
+        public Response<T> response() {
+            return response;
+        }
+
+        /** Returns why the call failed, or null if it got a response. */
+        public Throwable failure() {
+            return failure;
+        }
+
+        /** Returns true if the call got a response with a 2xx code. */
+        public boolean isSuccessful() {
+            return response != null && response.isSuccessful();
+        }
+    }
+
+    /**
+     * Runs {@code calls} like {@link #executeAll(Collection, int, OnFailure)}, delivering every
+     * outcome.
+     */
+    public static <T> Stream<Outcome<T>> executeAll(Collection<? extends Call<T>> calls, int parallelism) {
+        return executeAll(calls, parallelism, OnFailure.CONTINUE);
+    }
+
+    /**
+     * Enqueues {@code calls}, at most {@code parallelism} at a time, and returns their outcomes in
+     * the order they complete. Calls start right away; the stream blocks until the next one is
+     * done. Only as many calls as may run are handed to OkHttp, so its {@link okhttp3.Dispatcher}
+     * never holds a long line of waiting calls that it would scan under its lock whenever one
+     * finishes.
+     *
+     * <p>With {@link OnFailure#ABORT} the first failure cancels every call still waiting or in
+     * flight, and the stream throws it: an {@link IOException} wrapped in an
+     * {@link UncheckedIOException}, anything else as it is. Closing the stream cancels the remaining
+     * calls too, so use it in try-with-resources when it may not be read to the end.
+     */
+    public static <T> Stream<Outcome<T>> executeAll(Collection<? extends Call<T>> calls, int parallelism,
+                                                    OnFailure onFailure) {
+        if (calls == null) {
+            throw new NullPointerException("calls == null");
+        }
+        if (onFailure == null) {
+            throw new NullPointerException("onFailure == null");
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism < 1: " + parallelism);
+        }
+        Batch<T> batch = new Batch<>(new ArrayList<>(calls), parallelism, onFailure);
+        batch.fill();
+        return StreamSupport.stream(batch, false).onClose(batch::abort);
+    }
+
+    private static final class Batch<T> extends Spliterators.AbstractSpliterator<Outcome<T>> {
+        private final List<Call<T>> calls;
+        private final int parallelism;
+        private final OnFailure onFailure;
+        private final BlockingQueue<Outcome<T>> completed = new LinkedBlockingQueue<>();
+        /** The index of the next call to start. */
+        private final AtomicInteger next = new AtomicInteger();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        /** Requests to fill; only the caller that raises it from zero fills, until it drops back. */
+        private final AtomicInteger fills = new AtomicInteger();
+        private final Set<Call<T>> running = ConcurrentHashMap.newKeySet();
+        private volatile boolean aborted;
+        // Only touched by the thread reading the stream.
+        private int delivered;
+
+        Batch(List<Call<T>> calls, int parallelism, OnFailure onFailure) {
+            super(calls.size(), Spliterator.ORDERED | Spliterator.NONNULL);
+            this.calls = calls;
+            this.parallelism = parallelism;
+            this.onFailure = onFailure;
+        }
+
+        /**
+         * Claims every free slot at once and starts that many calls. Calls that complete while
+         * they are being started, such as those rejected by an open circuit, ask for another fill
+         * that runs in this loop rather than recursing.
+         */
+        void fill() {
+            if (fills.getAndIncrement() != 0) {
+                return;
+            }
+            do {
+                int current = inFlight.get();
+                if (aborted || current >= parallelism || !inFlight.compareAndSet(current, parallelism)) {
+                    continue;
+                }
+                int free = parallelism - current;
+                int from = next.getAndAdd(free);
+                int to = Math.min(from + free, calls.size());
+                if (to - from < free) {
+                    // Past the last call, so nobody is left to use the rest.
+                    inFlight.addAndGet(-(free - Math.max(0, to - from)));
+                }
+                for (int i = from; i < to; i++) {
+                    start(calls.get(i));
+                }
+            } while (fills.decrementAndGet() != 0);
+        }
+
+        private void start(Call<T> call) {
+            // Registered before the check so that a concurrent abort either sees it or is seen.
+            running.add(call);
+            if (aborted) {
+                call.cancel();
+                return;
+            }
+            try {
+                call.enqueue(new Callback<T>() {
+                    @Override
+                    public void onResponse(Call<T> ignored, Response<T> response) {
+                        complete(new Outcome<>(call, response, null));
+                    }
+
+                    @Override
+                    public void onFailure(Call<T> ignored, Throwable t) {
+                        complete(new Outcome<>(call, null, t));
+                    }
+                });
+            } catch (RuntimeException e) {
+                // Such as a call that was already executed.
+                complete(new Outcome<>(call, null, e));
+            }
+        }
+
+        private void complete(Outcome<T> outcome) {
+            running.remove(outcome.call);
+            inFlight.decrementAndGet();
+            if (outcome.failure != null && onFailure == OnFailure.ABORT) {
+                if (aborted) {
+                    // Most likely canceled by the abort; the failure that caused it is delivered instead.
+                    return;
+                }
+                // Before the failure is delivered, so that the rest are canceled once it is thrown.
+                abort();
+                completed.add(outcome);
+            } else {
+                completed.add(outcome);
+                fill();
+            }
+        }
+
+        /** Cancels every call that has not completed, and stops starting new ones. */
+        void abort() {
+            aborted = true;
+            int from = next.getAndAdd(calls.size());
+            for (int i = from; i < calls.size(); i++) {
+                calls.get(i).cancel();
+            }
+            for (Call<T> call : running) {
+                call.cancel();
+            }
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Outcome<T>> action) {
+            if (delivered == calls.size()) {
+                return false;
+            }
+            Outcome<T> outcome;
+            try {
+                outcome = completed.take();
+            } catch (InterruptedException e) {
+                // Calls that never started will not complete, so nothing more can be delivered.
+                delivered = calls.size();
+                abort();
+                Thread.currentThread().interrupt();
+                throw new UncheckedIOException(new InterruptedIOException());
+            }
+            delivered++;
+            if (outcome.failure != null && onFailure == OnFailure.ABORT) {
+                // Nothing after the failure is delivered.
+                delivered = calls.size();
+                Throwable failure = outcome.failure;
+                if (failure instanceof IOException) {
+                    throw new UncheckedIOException((IOException) failure);
+                }
+                if (failure instanceof RuntimeException) {
+                    throw (RuntimeException) failure;
+                }
+                if (failure instanceof Error) {
+                    throw (Error) failure;
+                }
+                throw new RuntimeException(failure);
+            }
+            action.accept(outcome);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package main.retrofit;
+
+import main.retrofit.okhttp.CircuitBreaker;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The circuit breaker for one service method or one host; see {@link CircuitBreaker}. Outcomes are
+ * kept in a ring of the most recent calls, so the failure rate follows the server as it recovers
+ * instead of averaging over its whole history.
+ */
+public final class Circuit {
+
+    public enum State {
+        /** Calls go through and their outcomes are recorded. */
+        CLOSED,
+        /** Calls fail without reaching the network. */
+        OPEN,
+        /** A few probe calls go through to test whether the server has recovered. */
+        HALF_OPEN
+    }
+
+    /** Observes a circuit's transitions. It is called on the thread that caused the transition. */
+    public interface Listener {
+        void onStateChange(Circuit circuit, State from, State to);
+    }
+
+    static final double DEFAULT_FAILURE_RATE = 0.5;
+    static final int DEFAULT_WINDOW_SIZE = 20;
+    static final int DEFAULT_MINIMUM_CALLS = 10;
+    static final long DEFAULT_OPEN_MILLIS = 30_000;
+    static final int DEFAULT_PROBES = 3;
+
+    /** What {@link #tryAcquire} returns when the call may not go ahead. */
+    static final long REJECTED = -1;
+
+    private final String name;
+    private final double failureRate;
+    private final int minimumCalls;
+    private final long openNanos;
+    private final int probes;
+    private final Listener listener;
+    /** Whether each of the most recent calls failed, oldest overwritten first. */
+    private final boolean[] window;
+    private int recorded;
+    private int failures;
+    private State state = State.CLOSED;
+    /** Advances on every transition, so outcomes of calls acquired in an earlier state are told apart. */
+    private long generation;
+    private long openUntilNanos;
+    private int probesStarted;
+    private int probesSucceeded;
+
+    Circuit(String name, double failureRate, int windowSize, int minimumCalls, long openMillis, int probes,
+            Listener listener) {
+        if (failureRate <= 0 || failureRate > 1) {
+            throw new IllegalArgumentException("@CircuitBreaker failureRate must be in (0, 1].");
+        }
+        if (windowSize < 1 || minimumCalls < 1 || minimumCalls > windowSize) {
+            throw new IllegalArgumentException(
+                    "@CircuitBreaker sizes must satisfy 1 <= minimumCalls <= windowSize.");
+        }
+        if (openMillis < 0 || probes < 1) {
+            throw new IllegalArgumentException(
+                    "@CircuitBreaker needs a non-negative openMillis and at least one probe.");
+        }
+        this.name = name;
+        this.failureRate = failureRate;
+        this.minimumCalls = minimumCalls;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+        this.probes = probes;
+        this.listener = listener;
+        this.window = new boolean[windowSize];
+    }
+
+    Circuit(String name, CircuitBreaker settings, Listener listener) {
+        this(name, settings.failureRate(), settings.windowSize(), settings.minimumCalls(),
+                settings.openMillis(), settings.probes(), listener);
+    }
+
+    /** Returns a closed circuit named {@code name}, with this one's settings and {@code listener}. */
+    Circuit copy(String name, Listener listener) {
+        return new Circuit(name, failureRate, window.length, minimumCalls,
+                TimeUnit.NANOSECONDS.toMillis(openNanos), probes, listener);
+    }
+
+    /** The method, as {@code Service.method}, or the host this circuit guards. */
+    public String name() {
+        return name;
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+
+    /**
+     * Returns a permit if a call may go ahead, or {@link #REJECTED}. The call must later
+     * {@link #record} its outcome or {@link #release} without one, passing the permit back. Permits
+     * taken before the circuit last changed state are stale: a call that started while it was closed
+     * is not a probe, and what it reports is ignored.
+     */
+    long tryAcquire() {
+        State from;
+        long permit;
+        synchronized (this) {
+            from = state;
+            if (state == State.OPEN) {
+                if (System.nanoTime() - openUntilNanos < 0) {
+                    return REJECTED;
+                }
+                state = State.HALF_OPEN;
+                generation++;
+                probesStarted = 0;
+                probesSucceeded = 0;
+            }
+            if (state == State.HALF_OPEN) {
+                if (probesStarted == probes) {
+                    return REJECTED;
+                }
+                probesStarted++;
+            }
+            permit = generation;
+        }
+        notifyIfChanged(from, from == State.OPEN ? State.HALF_OPEN : from);
+        return permit;
+    }
+
+    /** Records the outcome of the call that was given {@code permit}. */
+    void record(long permit, boolean failed) {
+        State from;
+        State to;
+        synchronized (this) {
+            if (permit != generation) {
+                return;
+            }
+            from = state;
+            if (state == State.HALF_OPEN) {
+                if (failed) {
+                    open();
+                } else if (++probesSucceeded == probes) {
+                    close();
+                }
+            } else if (state == State.CLOSED) {
+                int slot = recorded % window.length;
+                if (recorded >= window.length && window[slot]) {
+                    failures--;
+                }
+                window[slot] = failed;
+                if (failed) {
+                    failures++;
+                }
+                recorded++;
+                int size = Math.min(recorded, window.length);
+                if (size >= minimumCalls && failures >= failureRate * size) {
+                    open();
+                }
+            }
+            to = state;
+        }
+        notifyIfChanged(from, to);
+    }
+
+    /** Gives back {@code permit} for a call that ended without an outcome, such as a canceled one. */
+    synchronized void release(long permit) {
+        if (permit == generation && state == State.HALF_OPEN) {
+            probesStarted--;
+        }
+    }
+
+    CircuitOpenException openException() {
+        return new CircuitOpenException("Circuit " + name + " is open.");
+    }
+
+    private void open() {
+        state = State.OPEN;
+        generation++;
+        openUntilNanos = System.nanoTime() + openNanos;
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        generation++;
+        recorded = 0;
+        failures = 0;
+    }
+
+    private void notifyIfChanged(State from, State to) {
+        if (from != to && listener != null) {
+            listener.onStateChange(this, from, to);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Circuit{" + name + ", " + state() + "}";
+    }
+}
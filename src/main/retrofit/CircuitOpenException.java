@@ -0,0 +1,11 @@
+package main.retrofit;
+
+import java.io.IOException;
+
+/** Thrown or delivered for calls made while their {@link Circuit} is open. */
+public final class CircuitOpenException extends IOException {
+
+    public CircuitOpenException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,81 @@
+package main.retrofit;
+
+import main.retrofit.okhttp.Bulkhead;
+
+/**
+ * The calls in flight of one {@link Bulkhead} group: a fixed number of slots and a bounded queue
+ * in front of them, first come, first served. Its occupancy can be read at any time to see which
+ * groups are saturated.
+ */
+public final class Compartment {
+
+    private final String name;
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final SlotQueue slots;
+
+    Compartment(String name, int maxConcurrent, int maxQueued) {
+        if (maxConcurrent < 1) {
+            throw new IllegalArgumentException("@Bulkhead maxConcurrent must be at least 1.");
+        }
+        if (maxQueued < 0) {
+            throw new IllegalArgumentException("@Bulkhead maxQueued must not be negative.");
+        }
+        this.name = name;
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = maxQueued;
+        this.slots = SlotQueue.fifo(() -> maxConcurrent, maxQueued,
+                () -> new LimitExceededException("Bulkhead " + name + " is full."));
+    }
+
+    Compartment(String name, Bulkhead settings) {
+        this(name, settings.maxConcurrent(), settings.maxQueued());
+    }
+
+    /** Returns an empty compartment with the same name and settings. */
+    Compartment copy() {
+        return new Compartment(name, maxConcurrent, maxQueued);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public int maxConcurrent() {
+        return maxConcurrent;
+    }
+
+    public int maxQueued() {
+        return maxQueued;
+    }
+
+    /** Returns how many calls hold a slot. */
+    public int inFlight() {
+        return slots.inFlight();
+    }
+
+    /** Returns how many calls wait for a slot. */
+    public int queued() {
+        return slots.queued();
+    }
+
+    /**
+     * Returns an admission that completes once the call has a slot, or fails with
+     * {@link LimitExceededException} when the queue is full. A call that is admitted must
+     * {@link #release} once.
+     */
+    Admission acquire() {
+        return slots.acquire(0);
+    }
+
+    /** Frees an admitted call's slot, handing it to the next call waiting. */
+    void release() {
+        slots.release();
+    }
+
+    @Override
+    public String toString() {
+        return "Compartment{name=" + name + ", inFlight=" + inFlight() + "/" + maxConcurrent
+                + ", queued=" + queued() + "/" + maxQueued + "}";
+    }
+}
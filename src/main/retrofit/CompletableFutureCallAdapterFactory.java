@@ -0,0 +1,187 @@
+package main.retrofit;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Adapts service methods returning {@code CompletableFuture<T>} or
+ * {@code CompletableFuture<Response<T>>}. Calls are started with {@link Call#enqueue}, so no thread
+ * waits on the network, and cancelling the returned future cancels the HTTP call. Futures derived
+ * from it with {@code thenApply} and friends do not propagate cancellation upstream.
+ *
+ * <p>{@link Retrofit} falls back to the instance from {@link #create()}, which completes futures on
+ * OkHttp's dispatcher thread. Register {@link #create(Executor)} to complete them on an executor of
+ * your choosing instead; the {@link Retrofit.Builder#callbackExecutor callback executor} is not used.
+ */
+public final class CompletableFutureCallAdapterFactory extends CallAdapter.Factory {
+
+    static final CompletableFutureCallAdapterFactory INSTANCE = new CompletableFutureCallAdapterFactory(null);
+
+    private final Executor completionExecutor;
+
+    private CompletableFutureCallAdapterFactory(Executor completionExecutor) {
+        this.completionExecutor = completionExecutor;
+    }
+
+    public static CompletableFutureCallAdapterFactory create() {
+        return INSTANCE;
+    }
+
+    public static CompletableFutureCallAdapterFactory create(Executor completionExecutor) {
+        if (completionExecutor == null) {
+            throw new NullPointerException("completionExecutor == null");
+        }
+        return new CompletableFutureCallAdapterFactory(completionExecutor);
+    }
+
+    @Override
+    public CallAdapter<?, ?> get(Type returnType, Annotation[] annotations, Retrofit retrofit) {
+        if (getRawType(returnType) != CompletableFuture.class) {
+            return null;
+        }
+        if (!(returnType instanceof ParameterizedType)) {
+            throw new IllegalArgumentException("CompletableFuture return type must be parameterized"
+                    + " as CompletableFuture<Foo> or CompletableFuture<? extends Foo>");
+        }
+        Type innerType = getParameterUpperBound(0, (ParameterizedType) returnType);
+        if (getRawType(innerType) != Response.class) {
+            return new BodyCallAdapter<>(innerType, completionExecutor);
+        }
+        if (!(innerType instanceof ParameterizedType)) {
+            throw new IllegalArgumentException("Response must be parameterized"
+                    + " as Response<Foo> or Response<? extends Foo>");
+        }
+        Type responseType = getParameterUpperBound(0, (ParameterizedType) innerType);
+        return new ResponseCallAdapter<>(responseType, completionExecutor);
+    }
+
+    private static final class BodyCallAdapter<R> implements CallAdapter<R, CompletableFuture<R>> {
+        private final Type responseType;
+        private final Executor completionExecutor;
+
+        BodyCallAdapter(Type responseType, Executor completionExecutor) {
+            this.responseType = responseType;
+            this.completionExecutor = completionExecutor;
+        }
+
+        @Override
+        public Type responseType() {
+            return responseType;
+        }
+
+        @Override
+        public CompletableFuture<R> adapt(Call<R> call) {
+            final CallFuture<R> future = new CallFuture<>(call);
+            call.enqueue(new CompletingCallback<R>(completionExecutor) {
+                @Override
+                void onResponse(Response<R> response) {
+                    if (response.isSuccessful()) {
+                        future.complete(response.body());
+                    } else {
+                        future.completeExceptionally(new HttpException(response));
+                    }
+                }
+
+                @Override
+                void onFailure(Throwable t) {
+                    future.completeExceptionally(t);
+                }
+            });
+            return future;
+        }
+    }
+
+    private static final class ResponseCallAdapter<R>
+            implements CallAdapter<R, CompletableFuture<Response<R>>> {
+        private final Type responseType;
+        private final Executor completionExecutor;
+
+        ResponseCallAdapter(Type responseType, Executor completionExecutor) {
+            this.responseType = responseType;
+            this.completionExecutor = completionExecutor;
+        }
+
+        @Override
+        public Type responseType() {
+            return responseType;
+        }
+
+        @Override
+        public CompletableFuture<Response<R>> adapt(Call<R> call) {
+            final CallFuture<Response<R>> future = new CallFuture<>(call);
+            call.enqueue(new CompletingCallback<R>(completionExecutor) {
+                @Override
+                void onResponse(Response<R> response) {
+                    future.complete(response);
+                }
+
+                @Override
+                void onFailure(Throwable t) {
+                    future.completeExceptionally(t);
+                }
+            });
+            return future;
+        }
+    }
+
+    /** Runs the outcome on the completion executor, or inline when there is none. */
+    private abstract static class CompletingCallback<R> implements Callback<R> {
+        private final Executor completionExecutor;
+
+        CompletingCallback(Executor completionExecutor) {
+            this.completionExecutor = completionExecutor;
+        }
+
+        abstract void onResponse(Response<R> response);
+
+        abstract void onFailure(Throwable t);
+
+        @Override
+        public final void onResponse(Call<R> call, final Response<R> response) {
+            if (completionExecutor == null) {
+                onResponse(response);
+                return;
+            }
+            completionExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    onResponse(response);
+                }
+            });
+        }
+
+        @Override
+        public final void onFailure(Call<R> call, final Throwable t) {
+            if (completionExecutor == null) {
+                onFailure(t);
+                return;
+            }
+            completionExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    onFailure(t);
+                }
+            });
+        }
+    }
+
+    private static final class CallFuture<T> extends CompletableFuture<T> {
+        private final Call<?> call;
+
+        CallFuture(Call<?> call) {
+            this.call = call;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean canceled = super.cancel(mayInterruptIfRunning);
+            if (canceled) {
+                call.cancel();
+            }
+            return canceled;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package main.retrofit;
+
+import main.retrofit.okhttp.ConcurrencyLimit;
+
+/**
+ * An additive-increase, multiplicative-decrease limit on one service method's calls in flight; see
+ * {@link ConcurrencyLimit}. A call that fails, is throttled (429 or 503), or arrives while recent
+ * latency is well above the long-run latency cuts the limit by a tenth. Any other call raises it by
+ * one, but only while the limit is actually being used, so an idle method cannot grow it without
+ * bound.
+ */
+final class ConcurrencyLimiter {
+
+    static final int DEFAULT_INITIAL_LIMIT = 20;
+    static final int DEFAULT_MIN_LIMIT = 1;
+    static final int DEFAULT_MAX_LIMIT = 200;
+    static final int DEFAULT_MAX_QUEUED = 100;
+
+    private static final double BACKOFF_RATIO = 0.9;
+    /** Recent latency this many times the long-run latency is treated as overload. */
+    private static final double LATENCY_TOLERANCE = 2.0;
+    private static final double SHORT_WEIGHT = 0.1;
+    private static final double LONG_WEIGHT = 0.01;
+
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueued;
+    private final SlotQueue slots;
+    /** Written under this limiter's lock; read without it by {@link #slots}. */
+    private volatile double limit;
+    private double shortRttNanos = -1;
+    private double longRttNanos = -1;
+
+    ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, int maxQueued) {
+        if (minLimit < 1 || initialLimit < minLimit || maxLimit < initialLimit) {
+            throw new IllegalArgumentException(
+                    "@ConcurrencyLimit limits must satisfy 1 <= minLimit <= initialLimit <= maxLimit.");
+        }
+        if (maxQueued < 0) {
+            throw new IllegalArgumentException("@ConcurrencyLimit maxQueued must not be negative.");
+        }
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxQueued = maxQueued;
+        this.limit = initialLimit;
+        this.slots = SlotQueue.fifo(() -> (int) limit, maxQueued,
+                () -> new LimitExceededException("Concurrency limit of " + (int) limit + " exceeded."));
+    }
+
+    ConcurrencyLimiter(ConcurrencyLimit settings) {
+        this(settings.initialLimit(), settings.minLimit(), settings.maxLimit(), settings.maxQueued());
+    }
+
+    /** Returns a limiter with the same settings and none of this one's observations. */
+    ConcurrencyLimiter copy() {
+        return new ConcurrencyLimiter(initialLimit, minLimit, maxLimit, maxQueued);
+    }
+
+    int limit() {
+        return (int) limit;
+    }
+
+    /**
+     * Returns an admission that completes once the call may start, or fails with
+     * {@link LimitExceededException} when the queue is full. A call that is admitted must
+     * {@link #release} once.
+     */
+    Admission acquire() {
+        return slots.acquire(0);
+    }
+
+    /**
+     * Ends an admitted call. {@code rttNanos} is its round-trip time, or -1 when it was canceled and
+     * says nothing about the server; {@code dropped} reports a failure or throttled response.
+     */
+    void release(long rttNanos, boolean dropped) {
+        synchronized (this) {
+            int used = slots.inFlight();
+            if (dropped) {
+                backOff();
+            } else if (rttNanos >= 0) {
+                if (longRttNanos < 0) {
+                    shortRttNanos = rttNanos;
+                    longRttNanos = rttNanos;
+                } else {
+                    shortRttNanos += (rttNanos - shortRttNanos) * SHORT_WEIGHT;
+                    longRttNanos += (rttNanos - longRttNanos) * LONG_WEIGHT;
+                }
+                if (shortRttNanos > longRttNanos * LATENCY_TOLERANCE) {
+                    backOff();
+                } else if (used * 2 >= limit) {
+                    limit = Math.min(maxLimit, limit + 1);
+                }
+            }
+        }
+        slots.release();
+    }
+
+    private void backOff() {
+        limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+    }
+}
@@ -0,0 +1,127 @@
+package main.retrofit;
+
+import okhttp3.Request;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+/**
+ * A call whose {@link main.retrofit.okhttp.Timeout} spans every attempt of the retrying or hedging
+ * call it wraps. When the deadline passes the wrapped call is canceled, so no further attempt
+ * starts, and its failure is reported as a timeout.
+ */
+final class DeadlineCall<T> implements Call<T> {
+
+    private final Call<T> delegate;
+    private final long timeoutNanos;
+    private volatile Timers.Timeout deadline;
+    private volatile boolean timedOut;
+    private volatile boolean done;
+
+    DeadlineCall(Call<T> delegate, long timeoutNanos) {
+        this.delegate = delegate;
+        this.timeoutNanos = timeoutNanos;
+    }
+
+    @Override
+    public Response<T> execute() throws IOException {
+        arm();
+        try {
+            return delegate.execute();
+        } catch (IOException e) {
+            throw timedOutOr(e);
+        } finally {
+            disarm();
+        }
+    }
+
+    @Override
+    public void enqueue(final Callback<T> callback) {
+        if (callback == null) {
+            throw new NullPointerException("callback == null");
+        }
+        delegate.enqueue(new Callback<T>() {
+            @Override
+            public void onResponse(Call<T> call, Response<T> response) {
+                disarm();
+                callback.onResponse(DeadlineCall.this, response);
+            }
+
+            @Override
+            public void onFailure(Call<T> call, Throwable t) {
+                disarm();
+                callback.onFailure(DeadlineCall.this, t instanceof IOException ? timedOutOr((IOException) t) : t);
+            }
+
+            @Override
+            public void onAttempt(Call<T> call, int attempt) {
+                callback.onAttempt(DeadlineCall.this, attempt);
+            }
+
+            @Override
+            public void onRetry(Call<T> call, int attempt, Response<T> response, Throwable failure,
+                                long delayMillis) {
+                callback.onRetry(DeadlineCall.this, attempt, response, failure, delayMillis);
+            }
+        });
+        // Armed once the wrapped call has accepted the callback, so a second enqueue fails as usual.
+        arm();
+    }
+
+    private void arm() {
+        Timers.Timeout armed = Timers.schedule(this::timeOut, timeoutNanos);
+        deadline = armed;
+        if (done) {
+            // The wrapped call finished before its deadline was even armed.
+            armed.cancel();
+        }
+    }
+
+    private void disarm() {
+        done = true;
+        Timers.Timeout armed = deadline;
+        if (armed != null) {
+            armed.cancel();
+        }
+    }
+
+    private void timeOut() {
+        timedOut = true;
+        delegate.cancel();
+    }
+
+    private IOException timedOutOr(IOException e) {
+        if (!timedOut) {
+            return e;
+        }
+        IOException timeout = new InterruptedIOException("timeout");
+        timeout.initCause(e);
+        return timeout;
+    }
+
+    @Override
+    public boolean isExecuted() {
+        return delegate.isExecuted();
+    }
+
+    @Override
+    public void cancel() {
+        disarm();
+        delegate.cancel();
+    }
+
+    @Override
+    public boolean isCanceled() {
+        return delegate.isCanceled();
+    }
+
+    @Override
+    public Call<T> clone() {
+        return new DeadlineCall<>(delegate.clone(), timeoutNanos);
+    }
+
+    @Override
+    public Request request() {
+        return delegate.request();
+    }
+}
@@ -67,6 +67,23 @@ final class ExecutorCallAdapterFactory extends CallAdapter.Factory {
                         }
                     });
                 }
+
+                @Override public void onAttempt(Call<T> call, final int attempt) {
+                    callbackExecutor.execute(new Runnable() {
+                        @Override public void run() {
+                            callback.onAttempt(ExecutorCallbackCall.this, attempt);
+                        }
+                    });
+                }
+
+                @Override public void onRetry(Call<T> call, final int attempt, final Response<T> response,
+                                              final Throwable failure, final long delayMillis) {
+                    callbackExecutor.execute(new Runnable() {
+                        @Override public void run() {
+                            callback.onRetry(ExecutorCallbackCall.this, attempt, response, failure, delayMillis);
+                        }
+                    });
+                }
             });
         }
 
@@ -0,0 +1,32 @@
+package main.retrofit;
+
+/**
+ * The Reactive Streams interfaces, shaped exactly like {@code java.util.concurrent.Flow} from Java 9
+ * so that code written against them moves over by changing imports. This tree targets Java 8, which
+ * has neither that class nor a Reactive Streams dependency.
+ */
+public final class Flow {
+
+    private Flow() {
+    }
+
+    public interface Publisher<T> {
+        void subscribe(Subscriber<? super T> subscriber);
+    }
+
+    public interface Subscriber<T> {
+        void onSubscribe(Subscription subscription);
+
+        void onNext(T item);
+
+        void onError(Throwable throwable);
+
+        void onComplete();
+    }
+
+    public interface Subscription {
+        void request(long n);
+
+        void cancel();
+    }
+}
@@ -0,0 +1,198 @@
+package main.retrofit;
+
+import main.retrofit.okhttp.Hedge;
+import okhttp3.Request;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A call that races a clone of itself when its first attempt is slow; see {@link Hedge}. The first
+ * successful response is delivered and the other attempt cancelled. A failed attempt is only
+ * delivered once no other attempt is left to succeed.
+ */
+final class HedgingCall<T> implements Call<T> {
+
+    private final Call<T> primary;
+    private final Policy policy;
+    private final TokenBudget budget;
+    private final AtomicBoolean executed = new AtomicBoolean();
+    private final AtomicBoolean delivered = new AtomicBoolean();
+    /** Attempts started and not yet finished; the last to fail delivers its failure. */
+    private final AtomicInteger pending = new AtomicInteger(1);
+    private volatile Call<T> hedge;
+    private volatile Timers.Timeout timer;
+    private volatile boolean canceled;
+
+    HedgingCall(Call<T> primary, Policy policy, TokenBudget budget) {
+        this.primary = primary;
+        this.policy = policy;
+        this.budget = budget;
+    }
+
+    @Override
+    public Response<T> execute() throws IOException {
+        return Utils.awaitEnqueued(this);
+    }
+
+    @Override
+    public void enqueue(final Callback<T> callback) {
+        if (callback == null) {
+            throw new NullPointerException("callback == null");
+        }
+        if (!executed.compareAndSet(false, true)) {
+            throw new IllegalStateException("Already executed.");
+        }
+        budget.recordCall();
+        primary.enqueue(new Attempt(primary, callback));
+        long delayNanos = policy.delayNanos();
+        if (delayNanos >= 0 && !canceled) {
+            timer = Timers.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    startHedge(callback);
+                }
+            }, delayNanos);
+            if (delivered.get()) {
+                timer.cancel();
+            }
+        }
+    }
+
+    private void startHedge(Callback<T> callback) {
+        if (delivered.get() || canceled || !budget.tryAcquire()) {
+            return;
+        }
+        pending.incrementAndGet();
+        Call<T> attempt = primary.clone();
+        hedge = attempt;
+        attempt.enqueue(new Attempt(attempt, callback));
+        if (delivered.get() || canceled) {
+            attempt.cancel();
+        }
+    }
+
+    private final class Attempt implements Callback<T> {
+        private final Call<T> call;
+        private final Callback<T> callback;
+        private final long startNanos = System.nanoTime();
+
+        Attempt(Call<T> call, Callback<T> callback) {
+            this.call = call;
+            this.callback = callback;
+        }
+
+        @Override
+        public void onResponse(Call<T> ignored, Response<T> response) {
+            policy.record(System.nanoTime() - startNanos);
+            if ((response.isSuccessful() || pending.decrementAndGet() == 0) && win()) {
+                callback.onResponse(HedgingCall.this, response);
+            }
+        }
+
+        @Override
+        public void onFailure(Call<T> ignored, Throwable t) {
+            if (pending.decrementAndGet() == 0 && win()) {
+                callback.onFailure(HedgingCall.this, t);
+            }
+        }
+
+        /** Claims delivery for this attempt and cancels whatever else is still running. */
+        private boolean win() {
+            if (!delivered.compareAndSet(false, true)) {
+                return false;
+            }
+            Timers.Timeout pendingTimer = timer;
+            if (pendingTimer != null) {
+                pendingTimer.cancel();
+            }
+            if (call != primary) {
+                primary.cancel();
+            }
+            Call<T> other = hedge;
+            if (other != null && other != call) {
+                other.cancel();
+            }
+            return true;
+        }
+    }
+
+    @Override
+    public boolean isExecuted() {
+        return executed.get();
+    }
+
+    @Override
+    public void cancel() {
+        canceled = true;
+        Timers.Timeout pendingTimer = timer;
+        if (pendingTimer != null) {
+            pendingTimer.cancel();
+        }
+        primary.cancel();
+        Call<T> attempt = hedge;
+        if (attempt != null) {
+            attempt.cancel();
+        }
+    }
+
+    @Override
+    public boolean isCanceled() {
+        return canceled;
+    }
+
+    @Override
+    public Call<T> clone() {
+        return new HedgingCall<>(primary.clone(), policy, budget);
+    }
+
+    @Override
+    public Request request() {
+        return primary.request();
+    }
+
+    /**
+     * A method's {@link Hedge} settings and, when its delay follows observed latencies, the most
+     * recent of them. The percentile is recomputed every {@value #RECOMPUTE_EVERY} samples rather
+     * than per call.
+     */
+    static final class Policy {
+        private static final int WINDOW = 128;
+        private static final int RECOMPUTE_EVERY = 16;
+
+        private final long fixedDelayNanos;
+        private final double percentile;
+        private final long[] samples = new long[WINDOW];
+        private final AtomicInteger recorded = new AtomicInteger();
+        private volatile long observedDelayNanos = -1;
+
+        Policy(Hedge hedge) {
+            this.fixedDelayNanos = hedge.delayMillis() >= 0 ? TimeUnit.MILLISECONDS.toNanos(hedge.delayMillis()) : -1;
+            this.percentile = hedge.percentile();
+        }
+
+        /** Returns how long to wait before hedging, or -1 to not hedge yet. */
+        long delayNanos() {
+            return fixedDelayNanos >= 0 ? fixedDelayNanos : observedDelayNanos;
+        }
+
+        void record(long latencyNanos) {
+            if (fixedDelayNanos >= 0) {
+                return;
+            }
+            int count = recorded.getAndIncrement();
+            // Racing writers may overwrite each other's slot; the window stays representative.
+            samples[count % WINDOW] = latencyNanos;
+            if ((count + 1) % RECOMPUTE_EVERY == 0) {
+                int size = Math.min(count + 1, WINDOW);
+                long[] sorted = Arrays.copyOf(samples, size);
+                Arrays.sort(sorted);
+                int index = (int) Math.min(size - 1, Math.max(0, Math.ceil(percentile * size) - 1));
+                observedDelayNanos = sorted[index];
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package main.retrofit;
+
+/**
+ * Thrown, or used to complete a future exceptionally, when an adapter that only exposes the body
+ * receives a non-2xx response.
+ */
+public class HttpException extends RuntimeException {
+
+    private final int code;
+    private final String message;
+    private final transient Response<?> response;
+
+    public HttpException(Response<?> response) {
+        super("HTTP " + response.code() + " " + response.message());
+        this.code = response.code();
+        this.message = response.message();
+        this.response = response;
+    }
+
+    /** HTTP status code. */
+    public int code() {
+        return code;
+    }
+
+    /** HTTP status message. */
+    public String message() {
+        return message;
+    }
+
+    /** The full response, or null if this exception was deserialized. */
+    public Response<?> response() {
+        return response;
+    }
+}
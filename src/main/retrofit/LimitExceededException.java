@@ -0,0 +1,11 @@
+package main.retrofit;
+
+import java.io.IOException;
+
+/** Thrown or delivered when a call is rejected rather than queued because a limit is reached. */
+public final class LimitExceededException extends IOException {
+
+    public LimitExceededException(String message) {
+        super(message);
+    }
+}
@@ -8,65 +8,293 @@ import okio.ForwardingSource;
 import okio.Okio;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
  * Created by pc on 2018/6/10.
  */
 public class OkHttpCall implements Call<Object> {
 
+    /*
+     * The lifecycle is one int of flags, moved forward only by CAS: CREATED (no flags), then EXECUTED
+     * once execute or enqueue wins, then DONE when the outcome is known. CANCELED can be set at any
+     * point. Keeping it in a single word means "already executed" and "canceled" are decided
+     * together, without a lock. A call whose deadline passes before it is DONE is canceled with
+     * TIMED_OUT set as well.
+     */
+    private static final int EXECUTED = 1;
+    private static final int DONE = 1 << 1;
+    private static final int CANCELED = 1 << 2;
+    private static final int TIMED_OUT = 1 << 3;
+
+    private static final AtomicIntegerFieldUpdater<OkHttpCall> STATE =
+            AtomicIntegerFieldUpdater.newUpdater(OkHttpCall.class, "state");
+    private static final AtomicReferenceFieldUpdater<OkHttpCall, Object> RAW =
+            AtomicReferenceFieldUpdater.newUpdater(OkHttpCall.class, Object.class, "raw");
+
     private Object[] args;
-    private volatile boolean isExecuted = false;
-    private volatile boolean isCancelled = false;
     private ServiceMethod<Object, Call> serviceMethod;
-    private volatile okhttp3.Call rawCall;
-    private Throwable creationFailure;
+    private volatile int state;
+    /** The {@link okhttp3.Call}, or the {@link Throwable} creating it failed with; set only once. */
+    private volatile Object raw;
+    /** Set while this call waits in a queue, such as its method's limiter, before it starts. */
+    private volatile Admission admission;
+    /** What this call's circuit handed out when it let the call through. */
+    private long circuitPermit;
+    /** False when a {@link DeadlineCall} around this attempt keeps the deadline instead. */
+    private boolean armsDeadline;
+    /** Armed once the call is executed if it has a {@link main.retrofit.okhttp.Timeout}. */
+    private volatile Timers.Timeout deadline;
 
     public OkHttpCall(OkHttpCall okHttpCall) {
         this.serviceMethod = okHttpCall.serviceMethod;
         this.args = okHttpCall.args;
+        this.armsDeadline = okHttpCall.armsDeadline;
     }
 
     public OkHttpCall(ServiceMethod serviceMethod, Object[] args) {
+        this(serviceMethod, args, true);
+    }
+
+    OkHttpCall(ServiceMethod serviceMethod, Object[] args, boolean armsDeadline) {
         this.serviceMethod = serviceMethod;
         this.args = args;
+        this.armsDeadline = armsDeadline;
     }
 
     @Override
     public Response<Object> execute() throws IOException {
-        if(isExecuted){
-            throw new IllegalStateException("Already executed.");
-        }
-        if(isCancelled){
-            throw new IOException("Canceled");
-        }
-        if (creationFailure != null) {
-            if(creationFailure instanceof IOException){
-                throw (IOException) creationFailure;
+        int current;
+        do {
+            current = state;
+            if ((current & EXECUTED) != 0) {
+                throw new IllegalStateException("Already executed.");
             }
-            if(creationFailure instanceof RuntimeException){
-                throw (RuntimeException) creationFailure;
+            if ((current & CANCELED) != 0) {
+                throw new IOException("Canceled");
             }
-            if(creationFailure instanceof Error){
-                throw (Error) creationFailure;
-            }
-        }
-        isExecuted = true;
-        try{
-            if(rawCall == null){
-                rawCall = serviceMethod.toCall(args);
+        } while (!STATE.compareAndSet(this, current, current | EXECUTED));
+
+        try {
+            armDeadline();
+            Circuit circuit = serviceMethod.circuit;
+            if (circuit != null && (circuitPermit = circuit.tryAcquire()) == Circuit.REJECTED) {
+                throw circuit.openException();
             }
-        }catch (Throwable e){
-            throwIfFatal(e);
-            creationFailure = e;
-            if(e instanceof RuntimeException || e instanceof Error){
+            Compartment bulkhead = serviceMethod.bulkhead;
+            ConcurrencyLimiter limiter = serviceMethod.limiter;
+            boolean inBulkhead = false;
+            boolean inLimiter = false;
+            okhttp3.Call rawCall;
+            try {
+                Object call = rawCall();
+                if (call instanceof Throwable) {
+                    Throwable failure = (Throwable) call;
+                    if (failure instanceof IOException) {
+                        throw (IOException) failure;
+                    }
+                    if (failure instanceof RuntimeException) {
+                        throw (RuntimeException) failure;
+                    }
+                    if (failure instanceof Error) {
+                        throw (Error) failure;
+                    }
+                    throw new RuntimeException(failure);
+                }
+                rawCall = (okhttp3.Call) call;
+                if (bulkhead != null) {
+                    awaitAdmission(bulkhead.acquire(), bulkhead::release);
+                    inBulkhead = true;
+                }
+                if (limiter != null) {
+                    awaitAdmission(limiter.acquire(), () -> limiter.release(-1, false));
+                    inLimiter = true;
+                }
+                RateLimiter rateLimiter = serviceMethod.rateLimiter;
+                if (rateLimiter != null) {
+                    awaitAdmission(rateLimiter.acquire(serviceMethod.rateLimitWaitNanos), () -> { });
+                }
+            } catch (IOException | RuntimeException | Error e) {
+                if (inLimiter) {
+                    limiter.release(-1, false);
+                }
+                if (inBulkhead) {
+                    bulkhead.release();
+                }
+                if (circuit != null) {
+                    circuit.release(circuitPermit);
+                }
                 throw e;
             }
+            cancelIfCanceled(rawCall);
+            long startNanos = System.nanoTime();
+            okhttp3.Response rawResponse = null;
+            try {
+                rawResponse = rawCall.execute();
+            } catch (IOException e) {
+                throw canceledOr(e);
+            } finally {
+                finish(startNanos, rawResponse);
+            }
+            try {
+                return parseResponse(rawResponse);
+            } catch (IOException e) {
+                throw canceledOr(e);
+            }
+        } finally {
+            markDone();
+        }
+    }
+
+    /**
+     * Returns the raw call, creating it on first use. Concurrent callers may each build one, but
+     * only the first to be published is ever used. A creation failure is published in its place so
+     * that every caller sees the same outcome.
+     */
+    private Object rawCall() {
+        Object call = raw;
+        if (call != null) {
+            return call;
+        }
+        try {
+            call = serviceMethod.toCall(args);
+        } catch (Throwable e) {
+            throwIfFatal(e);
+            call = e;
         }
-        if(isCancelled){
+        return RAW.compareAndSet(this, null, call) ? call : raw;
+    }
+
+    /** Pairs with {@link #cancel()}: whichever of the two runs second cancels the raw call. */
+    private void cancelIfCanceled(okhttp3.Call rawCall) {
+        if ((state & CANCELED) != 0) {
             rawCall.cancel();
         }
-        okhttp3.Response rawResponse = rawCall.execute();
-        return parseResponse(rawResponse);
+    }
+
+    /**
+     * Depending on how far the exchange got, OkHttp reports a cancel as "Canceled" or as whatever
+     * the aborted socket threw. Callers of a canceled call always see the former, and those of a
+     * call that timed out see {@link #timeoutException()}.
+     */
+    private IOException canceledOr(IOException e) {
+        if ((state & TIMED_OUT) != 0) {
+            IOException timeout = timeoutException();
+            timeout.initCause(e);
+            return timeout;
+        }
+        return isCanceled() && !"Canceled".equals(e.getMessage()) ? new IOException("Canceled", e) : e;
+    }
+
+    private static IOException timeoutException() {
+        return new InterruptedIOException("timeout");
+    }
+
+    private void armDeadline() {
+        if (!armsDeadline) {
+            return;
+        }
+        long timeoutNanos = serviceMethod.timeoutNanos(args);
+        if (timeoutNanos > 0) {
+            deadline = Timers.schedule(this::timeOut, timeoutNanos);
+        }
+    }
+
+    /** Runs on the timer thread when the deadline passes; like {@link #cancel()} unless already done. */
+    private void timeOut() {
+        int current;
+        do {
+            current = state;
+            if ((current & (DONE | CANCELED)) != 0) {
+                return;
+            }
+        } while (!STATE.compareAndSet(this, current, current | CANCELED | TIMED_OUT));
+        abort(timeoutException());
+    }
+
+    /** Waits in {@code admission}. Pairs with {@link #cancel()} like {@link #cancelIfCanceled}. */
+    private Admission admit(Admission admission) {
+        this.admission = admission;
+        int current = state;
+        if ((current & CANCELED) != 0) {
+            admission.withdraw((current & TIMED_OUT) != 0
+                    ? timeoutException()
+                    : new IOException("Canceled"));
+        }
+        return admission;
+    }
+
+    /** Waits in {@code admission}; {@code giveBack} frees the place if it is won after all. */
+    private void awaitAdmission(Admission admission, Runnable giveBack) throws IOException {
+        admit(admission);
+        try {
+            admission.get();
+        } catch (InterruptedException e) {
+            if (!admission.withdraw(new InterruptedIOException())) {
+                // Admitted just as we gave up; hand the slot back.
+                giveBack.run();
+            }
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+    }
+
+    /**
+     * Reports a started call's round trip to its method's limiter and circuit, and frees its
+     * bulkhead slot; {@code response} is null when it failed. A canceled call says nothing about the
+     * server and is not counted, but one that timed out counts as failed.
+     */
+    private void finish(long startNanos, okhttp3.Response response) {
+        ConcurrencyLimiter limiter = serviceMethod.limiter;
+        Circuit circuit = serviceMethod.circuit;
+        if ((state & (CANCELED | TIMED_OUT)) == CANCELED) {
+            abandon();
+            return;
+        }
+        if (limiter != null) {
+            boolean dropped = response == null || response.code() == 429 || response.code() == 503;
+            limiter.release(System.nanoTime() - startNanos, dropped);
+        }
+        if (circuit != null) {
+            circuit.record(circuitPermit, response == null || response.code() >= 500);
+        }
+        Compartment bulkhead = serviceMethod.bulkhead;
+        if (bulkhead != null) {
+            bulkhead.release();
+        }
+    }
+
+    /** Hands back what a call that never reached the server holds in its limiter, circuit and bulkhead. */
+    private void abandon() {
+        ConcurrencyLimiter limiter = serviceMethod.limiter;
+        if (limiter != null) {
+            limiter.release(-1, false);
+        }
+        Circuit circuit = serviceMethod.circuit;
+        if (circuit != null) {
+            circuit.release(circuitPermit);
+        }
+        Compartment bulkhead = serviceMethod.bulkhead;
+        if (bulkhead != null) {
+            bulkhead.release();
+        }
+    }
+
+    private void markDone() {
+        int current;
+        do {
+            current = state;
+        } while (!STATE.compareAndSet(this, current, current | DONE));
+        Timers.Timeout armed = deadline;
+        if (armed != null) {
+            armed.cancel();
+        }
     }
 
     private void throwIfFatal(Throwable e) {
@@ -81,68 +309,192 @@ public class OkHttpCall implements Call<Object> {
 
     @Override
     public void enqueue(Callback callback) {
-        if(isExecuted){
-            throw new IllegalStateException("Already executed.");
+        int current;
+        do {
+            current = state;
+            if ((current & EXECUTED) != 0) {
+                throw new IllegalStateException("Already executed.");
+            }
+        } while (!STATE.compareAndSet(this, current, current | EXECUTED));
+
+        armDeadline();
+        Circuit circuit = serviceMethod.circuit;
+        if (circuit != null && (circuitPermit = circuit.tryAcquire()) == Circuit.REJECTED) {
+            markDone();
+            callback.onFailure(OkHttpCall.this, circuit.openException());
+            return;
         }
-        isExecuted = true;
-        if (creationFailure != null) {
-            callback.onFailure(OkHttpCall.this, creationFailure);
+        Object call = rawCall();
+        if (call instanceof Throwable) {
+            reject(callback, (Throwable) call, false);
             return;
         }
-        try {
-            if(rawCall == null && creationFailure == null){
-                rawCall = serviceMethod.toCall(args);
+        okhttp3.Call rawCall = (okhttp3.Call) call;
+        Compartment bulkhead = serviceMethod.bulkhead;
+        if (bulkhead == null) {
+            limit(rawCall, callback);
+            return;
+        }
+        admit(bulkhead.acquire()).whenComplete((ignored, failure) -> {
+            if (failure != null) {
+                reject(callback, failure, false);
+            } else {
+                limit(rawCall, callback);
             }
-        } catch (Throwable e) {
-            throwIfFatal(e);
-            creationFailure = e;
-            callback.onFailure(OkHttpCall.this, e);
+        });
+    }
+
+    private void limit(okhttp3.Call rawCall, Callback callback) {
+        ConcurrencyLimiter limiter = serviceMethod.limiter;
+        if (limiter == null) {
+            pace(rawCall, callback);
             return;
         }
-        if(isCancelled){
-            rawCall.cancel();
+        admit(limiter.acquire()).whenComplete((ignored, failure) -> {
+            if (failure != null) {
+                reject(callback, failure, serviceMethod.bulkhead != null);
+            } else {
+                pace(rawCall, callback);
+            }
+        });
+    }
+
+    /** Waits for a token from the method's rate limiter on the timer thread, holding no other thread. */
+    private void pace(okhttp3.Call rawCall, Callback callback) {
+        RateLimiter rateLimiter = serviceMethod.rateLimiter;
+        if (rateLimiter == null) {
+            start(rawCall, callback);
+            return;
+        }
+        admit(rateLimiter.acquire(serviceMethod.rateLimitWaitNanos)).whenComplete((ignored, failure) -> {
+            if (failure != null) {
+                ConcurrencyLimiter limiter = serviceMethod.limiter;
+                if (limiter != null) {
+                    limiter.release(-1, false);
+                }
+                reject(callback, failure, serviceMethod.bulkhead != null);
+            } else {
+                start(rawCall, callback);
+            }
+        });
+    }
+
+    /** Fails an asynchronous call that did not start, handing back its circuit and bulkhead places. */
+    private void reject(Callback callback, Throwable failure, boolean inBulkhead) {
+        if (inBulkhead) {
+            serviceMethod.bulkhead.release();
         }
+        Circuit circuit = serviceMethod.circuit;
+        if (circuit != null) {
+            circuit.release(circuitPermit);
+        }
+        markDone();
+        callback.onFailure(OkHttpCall.this, failure);
+    }
+
+    private void start(okhttp3.Call rawCall, Callback callback) {
+        PriorityScheduler scheduler = serviceMethod.scheduler;
+        if (scheduler == null) {
+            dispatch(rawCall, callback, null);
+            return;
+        }
+        String host = rawCall.request().url().host();
+        long rank = PriorityScheduler.rank(serviceMethod.priority(args));
+        admit(scheduler.acquire(host, rank)).whenComplete((ignored, failure) -> {
+            if (failure != null) {
+                unscheduled(callback, failure);
+                return;
+            }
+            admit(scheduler.acquire(rank)).whenComplete((alsoIgnored, notDispatched) -> {
+                if (notDispatched != null) {
+                    scheduler.releaseHost(host);
+                    unscheduled(callback, notDispatched);
+                } else {
+                    dispatch(rawCall, callback, host);
+                }
+            });
+        });
+    }
+
+    /** Fails an asynchronous call that gave up waiting in the scheduler. */
+    private void unscheduled(Callback callback, Throwable failure) {
+        abandon();
+        markDone();
+        callback.onFailure(OkHttpCall.this, failure);
+    }
+
+    /** Hands {@code rawCall} to OkHttp; {@code host} is set if it holds a place in the scheduler. */
+    private void dispatch(okhttp3.Call rawCall, Callback callback, String host) {
+        cancelIfCanceled(rawCall);
+        long startNanos = System.nanoTime();
         rawCall.enqueue(new okhttp3.Callback() {
             @Override
             public void onFailure(okhttp3.Call call, IOException e) {
-                callback.onFailure(OkHttpCall.this, e);
+                if (host != null) {
+                    serviceMethod.scheduler.release(host);
+                }
+                finish(startNanos, null);
+                markDone();
+                callback.onFailure(OkHttpCall.this, canceledOr(e));
             }
 
             @Override
             public void onResponse(okhttp3.Call call, okhttp3.Response response) throws IOException {
-                try{
-                    callback.onResponse(OkHttpCall.this, parseResponse(response));
-                } catch (Exception e){
-                    callback.onFailure(OkHttpCall.this, e);
+                if (host != null) {
+                    serviceMethod.scheduler.release(host);
+                }
+                finish(startNanos, response);
+                Response<Object> parsed;
+                try {
+                    parsed = parseResponse(response);
+                } catch (Exception e) {
+                    markDone();
+                    callback.onFailure(OkHttpCall.this,
+                            e instanceof IOException ? canceledOr((IOException) e) : e);
+                    return;
                 }
+                markDone();
+                callback.onResponse(OkHttpCall.this, parsed);
             }
         });
     }
 
     @Override
     public boolean isExecuted() {
-        return isExecuted;
+        return (state & EXECUTED) != 0;
     }
 
     @Override
     public void cancel() {
-        if(isCancelled){
-            return;
+        int current;
+        do {
+            current = state;
+            if ((current & CANCELED) != 0) {
+                return;
+            }
+        } while (!STATE.compareAndSet(this, current, current | CANCELED));
+        abort(new IOException("Canceled"));
+    }
+
+    /** Stops a call that was just marked canceled, wherever it is; {@code reason} fails its wait. */
+    private void abort(IOException reason) {
+        Admission waiting = admission;
+        if (waiting != null) {
+            waiting.withdraw(reason);
         }
-        if(rawCall != null){
-            rawCall.cancel();
+        Object call = raw;
+        if (call instanceof okhttp3.Call) {
+            ((okhttp3.Call) call).cancel();
         }
-        isCancelled = true;
     }
 
     @Override
     public boolean isCanceled() {
-        if (isCancelled) {
+        if ((state & CANCELED) != 0) {
             return true;
         }
-        synchronized (this) {
-            return rawCall != null && rawCall.isCanceled();
-        }
+        Object call = raw;
+        return call instanceof okhttp3.Call && ((okhttp3.Call) call).isCanceled();
     }
 
     @Override
@@ -152,33 +504,18 @@ public class OkHttpCall implements Call<Object> {
 
     @Override
     public Request request() {
-        if (creationFailure != null) {
-            if(creationFailure instanceof RuntimeException){
-                throw (RuntimeException) creationFailure;
+        Object call = rawCall();
+        if (call instanceof Throwable) {
+            Throwable failure = (Throwable) call;
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
             }
-            if(creationFailure instanceof Error){
-                throw (Error) creationFailure;
-            }
-        }
-        if(rawCall == null){
-            try {
-                if(rawCall == null && creationFailure == null){
-                    rawCall = serviceMethod.toCall(args);
-                }
-            } catch (Throwable e) {
-                throwIfFatal(e);
-                creationFailure = e;
-                if(e instanceof RuntimeException){
-                    throw (RuntimeException) e;
-                } else if(e instanceof Exception){
-                    throw new RuntimeException(e);
-                } else if(e instanceof Error){
-                    throw (Error) e;
-                }
+            if (failure instanceof Error) {
+                throw (Error) failure;
             }
+            throw new RuntimeException(failure);
         }
-        okhttp3.Call call = rawCall;
-        return call.request();
+        return ((okhttp3.Call) call).request();
     }
 
     private Response parseResponse(okhttp3.Response response) throws IOException {
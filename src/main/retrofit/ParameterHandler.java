@@ -0,0 +1,97 @@
+package main.retrofit;
+
+import okhttp3.RequestBody;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Binds one service method argument to a {@link RequestBuilder}. Handlers are created when the
+ * method is parsed, with their converters already resolved, so a call only loops over them.
+ */
+abstract class ParameterHandler<T> {
+
+    abstract void apply(RequestBuilder builder, T value) throws IOException;
+
+    static final class Path<T> extends ParameterHandler<T> {
+        private final int slot;
+        private final String name;
+        private final Converter<T, String> valueConverter;
+        private final boolean encoded;
+
+        Path(int slot, String name, Converter<T, String> valueConverter, boolean encoded) {
+            this.slot = slot;
+            this.name = name;
+            this.valueConverter = valueConverter;
+            this.encoded = encoded;
+        }
+
+        @Override
+        void apply(RequestBuilder builder, T value) throws IOException {
+            if (value == null) {
+                throw new IllegalArgumentException("Path parameter \"" + name + "\" value must not be null.");
+            }
+            String pathValue = valueConverter.convert(value);
+            // Segments are added pre-encoded, so only a literal '%' needs escaping for raw values.
+            builder.addPathParam(slot, encoded ? pathValue : pathValue.replace("%", "%25"));
+        }
+    }
+
+    static final class Query<T> extends ParameterHandler<T> {
+        private final String name;
+        private final Converter<T, String> valueConverter;
+
+        Query(String name, Converter<T, String> valueConverter) {
+            this.name = name;
+            this.valueConverter = valueConverter;
+        }
+
+        @Override
+        void apply(RequestBuilder builder, T value) throws IOException {
+            if (value == null) {
+                return;
+            }
+            String queryValue = valueConverter.convert(value);
+            if (queryValue == null) {
+                return;
+            }
+            builder.addQueryParam(name, queryValue);
+        }
+    }
+
+    static final class Body<T> extends ParameterHandler<T> {
+        private final Converter<T, RequestBody> converter;
+
+        Body(Converter<T, RequestBody> converter) {
+            this.converter = converter;
+        }
+
+        @Override
+        void apply(RequestBuilder builder, T value) throws IOException {
+            if (value == null) {
+                throw new IllegalArgumentException("Body parameter value must not be null.");
+            }
+            builder.setBody(converter.convert(value));
+        }
+    }
+
+    /** Leaves the request alone; the call's priority is read from the argument when it is started. */
+    static final class Priority extends ParameterHandler<Integer> {
+        @Override
+        void apply(RequestBuilder builder, Integer value) {
+        }
+    }
+
+    /** Leaves the request alone; the call's deadline is read from the argument when it is started. */
+    static final class Timeout extends ParameterHandler<Long> {
+        final TimeUnit unit;
+
+        Timeout(TimeUnit unit) {
+            this.unit = unit;
+        }
+
+        @Override
+        void apply(RequestBuilder builder, Long value) {
+        }
+    }
+}
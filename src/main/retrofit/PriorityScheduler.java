@@ -0,0 +1,82 @@
+package main.retrofit;
+
+import okhttp3.Dispatcher;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds asynchronous calls back from the {@link Dispatcher}, which starts calls first come, first
+ * served, and hands them over in priority order instead; see {@link main.retrofit.okhttp.Priority}.
+ * A call first waits for a place among its host's calls, up to the dispatcher's per-host limit,
+ * and then for one among all calls, up to its overall limit. So the dispatcher itself never has
+ * to queue the calls that pass through here. There is one scheduler per dispatcher, shared by
+ * every Retrofit instance using it. Calls that other code enqueues on the same client still
+ * queue in the dispatcher, first come, first served.
+ *
+ * <p>Aging needs no rescans: a call's rank is its arrival time moved earlier by
+ * {@link #AGING_NANOS} per level of priority, and the lowest rank goes first.
+ */
+final class PriorityScheduler {
+
+    static final long AGING_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static final Map<Dispatcher, PriorityScheduler> SCHEDULERS = new WeakHashMap<>();
+
+    /** Weak, so that the scheduler does not keep its dispatcher in {@link #SCHEDULERS} forever. */
+    private final WeakReference<Dispatcher> dispatcher;
+    private final ConcurrentHashMap<String, SlotQueue> hosts = new ConcurrentHashMap<>();
+    private final SlotQueue all = SlotQueue.ranked(() -> limit(false));
+
+    private PriorityScheduler(Dispatcher dispatcher) {
+        this.dispatcher = new WeakReference<>(dispatcher);
+    }
+
+    /** Returns the scheduler of {@code dispatcher}, creating it on first use. */
+    static PriorityScheduler of(Dispatcher dispatcher) {
+        synchronized (SCHEDULERS) {
+            return SCHEDULERS.computeIfAbsent(dispatcher, PriorityScheduler::new);
+        }
+    }
+
+    /** Returns the rank of a call with {@code priority} that arrives now. */
+    static long rank(int priority) {
+        return System.nanoTime() - priority * AGING_NANOS;
+    }
+
+    /**
+     * Returns an admission that completes once a call to {@code host} has a place among that host's
+     * calls. The call then waits in {@link #acquire(long)}, or gives the place back with
+     * {@link #releaseHost} if it does not get that far.
+     */
+    Admission acquire(String host, long rank) {
+        return hosts.computeIfAbsent(host, ignored -> SlotQueue.ranked(() -> limit(true))).acquire(rank);
+    }
+
+    /** Returns an admission that completes once a call that has its host's place may be dispatched. */
+    Admission acquire(long rank) {
+        return all.acquire(rank);
+    }
+
+    /** Ends a dispatched call to {@code host}, admitting the next waiting ones. */
+    void release(String host) {
+        all.release();
+        releaseHost(host);
+    }
+
+    /** Gives back the host's place of a call to {@code host} that was never dispatched. */
+    void releaseHost(String host) {
+        hosts.get(host).release();
+    }
+
+    private int limit(boolean perHost) {
+        Dispatcher current = dispatcher.get();
+        if (current == null) {
+            return Integer.MAX_VALUE;
+        }
+        return perHost ? current.getMaxRequestsPerHost() : current.getMaxRequests();
+    }
+}
@@ -0,0 +1,242 @@
+package main.retrofit;
+
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ByteString;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Adapts service methods returning {@code Flow.Publisher<ByteString>} into a publisher of the
+ * response body, emitted in chunks of at most {@value #CHUNK_SIZE} bytes. The body is read only as
+ * far as subscribers have requested, so memory stays bounded however large the response is, and
+ * cancelling the subscription cancels the HTTP call. Declare such methods {@code @Streaming};
+ * without it the body is buffered in full before the first chunk is emitted.
+ *
+ * <p>Each subscription executes its own clone of the call. Chunks are read and emitted on whichever
+ * thread delivered the response or raised demand, one at a time. A subscriber's
+ * {@link Flow.Subscription#request(long)} may therefore block while the next chunk is read from the
+ * network; subscribers that must not block should request from a thread of their own.
+ */
+public final class PublisherCallAdapterFactory extends CallAdapter.Factory {
+
+    static final PublisherCallAdapterFactory INSTANCE = new PublisherCallAdapterFactory();
+
+    static final long CHUNK_SIZE = 8192;
+
+    private PublisherCallAdapterFactory() {
+    }
+
+    public static PublisherCallAdapterFactory create() {
+        return INSTANCE;
+    }
+
+    @Override
+    public CallAdapter<?, ?> get(Type returnType, Annotation[] annotations, Retrofit retrofit) {
+        if (getRawType(returnType) != Flow.Publisher.class) {
+            return null;
+        }
+        if (!(returnType instanceof ParameterizedType)
+                || getParameterUpperBound(0, (ParameterizedType) returnType) != ByteString.class) {
+            throw new IllegalArgumentException("Publisher return type must be Publisher<ByteString>");
+        }
+        return new CallAdapter<ResponseBody, Flow.Publisher<ByteString>>() {
+            @Override
+            public Type responseType() {
+                return ResponseBody.class;
+            }
+
+            @Override
+            public Flow.Publisher<ByteString> adapt(final Call<ResponseBody> call) {
+                return new Flow.Publisher<ByteString>() {
+                    @Override
+                    public void subscribe(Flow.Subscriber<? super ByteString> subscriber) {
+                        if (subscriber == null) {
+                            throw new NullPointerException("subscriber == null");
+                        }
+                        BodySubscription subscription = new BodySubscription(call.clone(), subscriber);
+                        subscriber.onSubscribe(subscription);
+                        subscription.start();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Signals flow through a single drain loop guarded by {@code wip}: whichever thread finds it
+     * idle runs it until no work is left, so the subscriber is never called concurrently and only
+     * the loop touches the body.
+     */
+    static final class BodySubscription implements Flow.Subscription, Callback<ResponseBody> {
+        private final Call<ResponseBody> call;
+        private final Flow.Subscriber<? super ByteString> subscriber;
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean canceled;
+        private volatile Throwable failure;
+        private volatile Response<ResponseBody> response;
+
+        // Owned by the drain loop.
+        private BufferedSource source;
+        private boolean done;
+        /** Whether the loop has taken the response, to read its body or to report its error. */
+        private boolean responseTaken;
+
+        BodySubscription(Call<ResponseBody> call, Flow.Subscriber<? super ByteString> subscriber) {
+            this.call = call;
+            this.subscriber = subscriber;
+        }
+
+        void start() {
+            if (canceled || failure != null) {
+                drain();
+                return;
+            }
+            call.enqueue(this);
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                failure = new IllegalArgumentException("n must be positive but was " + n);
+                call.cancel();
+            } else {
+                long current;
+                long next;
+                do {
+                    current = requested.get();
+                    next = current + n < 0 ? Long.MAX_VALUE : current + n;
+                } while (!requested.compareAndSet(current, next));
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            canceled = true;
+            call.cancel();
+            drain();
+        }
+
+        @Override
+        public void onResponse(Call<ResponseBody> call, Response<ResponseBody> response) {
+            this.response = response;
+            drain();
+        }
+
+        @Override
+        public void onFailure(Call<ResponseBody> call, Throwable t) {
+            if (failure == null) {
+                failure = t;
+            }
+            drain();
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                if (!done) {
+                    emit();
+                } else {
+                    discardLateResponse();
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void emit() {
+            while (true) {
+                if (canceled) {
+                    finish();
+                    return;
+                }
+                Throwable error = failure;
+                if (error != null) {
+                    finish();
+                    subscriber.onError(error);
+                    return;
+                }
+                Response<ResponseBody> current = response;
+                if (current == null) {
+                    return;
+                }
+                if (source == null) {
+                    responseTaken = true;
+                    if (!current.isSuccessful()) {
+                        finish();
+                        subscriber.onError(new HttpException(current));
+                        return;
+                    }
+                    if (current.body() == null) {
+                        finish();
+                        subscriber.onComplete();
+                        return;
+                    }
+                    source = current.body().source();
+                }
+                long demand = requested.get();
+                if (demand == 0) {
+                    return;
+                }
+                Buffer chunk = new Buffer();
+                long read;
+                try {
+                    read = source.read(chunk, CHUNK_SIZE);
+                } catch (IOException e) {
+                    finish();
+                    if (!canceled) {
+                        subscriber.onError(e);
+                    }
+                    return;
+                }
+                if (read == -1) {
+                    finish();
+                    subscriber.onComplete();
+                    return;
+                }
+                if (demand != Long.MAX_VALUE) {
+                    requested.decrementAndGet();
+                }
+                subscriber.onNext(chunk.readByteString());
+            }
+        }
+
+        /**
+         * OkHttp may still deliver a response after the call is canceled. Nobody will read it once
+         * the subscription is done, so its body is closed to give the connection back.
+         */
+        private void discardLateResponse() {
+            Response<ResponseBody> late = response;
+            if (late == null || responseTaken) {
+                return;
+            }
+            responseTaken = true;
+            if (late.body() != null) {
+                late.body().close();
+            }
+            if (late.errorBody() != null) {
+                late.errorBody().close();
+            }
+        }
+
+        private void finish() {
+            done = true;
+            if (source != null) {
+                try {
+                    source.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package main.retrofit;
+
+import main.retrofit.okhttp.RateLimit;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The token bucket for one host's {@link RateLimit rate-limited} calls, kept as a single
+ * timestamp: when the bucket would next be full if no more tokens were taken, also known as the
+ * generic cell rate algorithm. Taking a token is one compare-and-set, so callers never lock;
+ * a call that takes a token before it is due is told how long to wait for it.
+ */
+final class RateLimiter implements Admission.Queue {
+
+    private final String host;
+    private final double permitsPerSecond;
+    private final int burst;
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final AtomicLong fullAt = new AtomicLong(System.nanoTime());
+    /** The timers of calls waiting for a token that is not yet due. */
+    private final ConcurrentHashMap<Admission, Timers.Timeout> waiting = new ConcurrentHashMap<>();
+
+    RateLimiter(String host, double permitsPerSecond, int burst) {
+        if (!(permitsPerSecond > 0)) {
+            throw new IllegalArgumentException("@RateLimit permitsPerSecond must be positive.");
+        }
+        if (burst < 1) {
+            throw new IllegalArgumentException("@RateLimit burst must be at least 1.");
+        }
+        this.host = host;
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.intervalNanos = Math.max(1, Math.round(1_000_000_000 / permitsPerSecond));
+        this.burstNanos = intervalNanos * burst;
+    }
+
+    RateLimiter(String host, RateLimit settings) {
+        this(host, settings.permitsPerSecond(), settings.burst());
+    }
+
+    /** Returns a full bucket for {@code host} with this one's settings. */
+    RateLimiter copy(String host) {
+        return new RateLimiter(host, permitsPerSecond, burst);
+    }
+
+    String host() {
+        return host;
+    }
+
+    /**
+     * Returns an admission that completes when the call's token is due, or fails with
+     * {@link LimitExceededException} if that is more than {@code maxWaitNanos} away; -1 waits for
+     * as long as it takes.
+     */
+    Admission acquire(long maxWaitNanos) {
+        Admission admission = new Admission(this, 0);
+        long waitNanos = reserve(maxWaitNanos);
+        if (waitNanos < 0) {
+            admission.completeExceptionally(
+                    new LimitExceededException("Rate limit of " + host + " exceeded."));
+        } else if (waitNanos == 0) {
+            admission.complete(null);
+        } else {
+            waiting.put(admission, Timers.schedule(() -> {
+                waiting.remove(admission);
+                admission.complete(null);
+            }, waitNanos));
+            if (admission.isDone()) {
+                // The timer fired before it was recorded.
+                waiting.remove(admission);
+            }
+        }
+        return admission;
+    }
+
+    /** Takes the next token and returns how long until it is due, or -1 if that is too long. */
+    private long reserve(long maxWaitNanos) {
+        while (true) {
+            long now = System.nanoTime();
+            long current = fullAt.get();
+            long next = Math.max(current, now) + intervalNanos;
+            long waitNanos = Math.max(0, next - now - burstNanos);
+            if (maxWaitNanos >= 0 && waitNanos > maxWaitNanos) {
+                return -1;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return waitNanos;
+            }
+        }
+    }
+
+    /** Cancels a withdrawn call's timer and gives its token back, unless the bucket has refilled since. */
+    @Override
+    public void remove(Admission admission) {
+        Timers.Timeout timer = waiting.remove(admission);
+        if (timer == null) {
+            return;
+        }
+        timer.cancel();
+        while (true) {
+            long now = System.nanoTime();
+            long current = fullAt.get();
+            if (current - now <= 0
+                    || fullAt.compareAndSet(current, Math.max(now, current - intervalNanos))) {
+                return;
+            }
+        }
+    }
+}
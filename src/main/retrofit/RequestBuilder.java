@@ -17,27 +17,43 @@ package main.retrofit;
 
 import okhttp3.*;
 
+import java.util.ArrayList;
+import java.util.List;
+
 final class RequestBuilder {
 
+  private static final byte[] EMPTY_BODY = new byte[0];
+
   private String method;
 
-  private String baseUrl;
-  private String relativeUrl;
+  private final HttpUrl baseUrl;
+  private final UrlTemplate relativeUrl;
+  private final String[] pathValues;
+  private List<String> query;
 
   private final Request.Builder requestBuilder;
   private MediaType contentType;
 
   private RequestBody body;
 
-  RequestBuilder(String method, String baseUrl,  String relativeUrl) {
+  RequestBuilder(String method, HttpUrl baseUrl, UrlTemplate relativeUrl) {
     this.method = method;
     this.baseUrl = baseUrl;
     this.relativeUrl = relativeUrl;
+    this.pathValues = new String[relativeUrl.slotCount()];
     this.requestBuilder = new Request.Builder();
   }
 
-  void setRelativeUrl(Object relativeUrl) {
-    this.relativeUrl = relativeUrl.toString();
+  void addPathParam(int slot, String value) {
+    pathValues[slot] = value;
+  }
+
+  void addQueryParam(String name, String value) {
+    if (query == null) {
+      query = new ArrayList<>();
+    }
+    query.add(name);
+    query.add(value);
   }
 
   void addHeader(String name, String value) {
@@ -62,8 +78,13 @@ final class RequestBuilder {
       requestBuilder.addHeader("Content-Type", contentType.toString());
     }
 
+    HttpUrl url = relativeUrl.resolve(baseUrl, pathValues, query);
+    RequestBody body = this.body;
+    if (body == null && "POST".equals(method)) {
+      body = RequestBody.create(null, EMPTY_BODY);
+    }
     return requestBuilder
-            .url(baseUrl + relativeUrl)
+            .url(url)
             .method(method, body)
             .build();
   }
@@ -0,0 +1,111 @@
+package main.retrofit;
+
+import main.retrofit.okhttp.Body;
+import main.retrofit.okhttp.GET;
+import main.retrofit.okhttp.POST;
+import main.retrofit.okhttp.Path;
+import main.retrofit.okhttp.Query;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers which converter or call adapter the factories produced for a given type and set of
+ * annotations, so service methods that share a signature resolve it once. Reads are plain
+ * {@link ConcurrentHashMap#get} calls and never lock.
+ *
+ * <p>Keys ignore the routing annotations ({@code @GET}, {@code @POST}, {@code @Path},
+ * {@code @Query}, {@code @Body}): factories are expected to pick converters by type and by their
+ * own annotations, not by URL, which lets {@code @GET("/a")} and {@code @GET("/b")} share an entry.
+ */
+final class ResolutionCache {
+
+    enum Kind {
+        RESPONSE_CONVERTER, REQUEST_CONVERTER, STRING_CONVERTER, CALL_ADAPTER
+    }
+
+    private static final Annotation[] NO_ANNOTATIONS = new Annotation[0];
+
+    private final ConcurrentHashMap<Key, Object> resolved = new ConcurrentHashMap<>();
+
+    static Key key(Kind kind, Type type, Annotation[] annotations, Annotation[] methodAnnotations) {
+        return new Key(kind, type, canonicalize(annotations), canonicalize(methodAnnotations));
+    }
+
+    <V> V get(Key key) {
+        return (V) resolved.get(key);
+    }
+
+    /** Caches {@code value} unless another thread got there first, and returns the winner. */
+    <V> V put(Key key, V value) {
+        Object existing = resolved.putIfAbsent(key, value);
+        return existing != null ? (V) existing : value;
+    }
+
+    private static Annotation[] canonicalize(Annotation[] annotations) {
+        if (annotations == null || annotations.length == 0) {
+            return NO_ANNOTATIONS;
+        }
+        int kept = 0;
+        for (Annotation annotation : annotations) {
+            if (!isRouting(annotation)) {
+                kept++;
+            }
+        }
+        if (kept == annotations.length) {
+            return annotations.clone();
+        }
+        Annotation[] result = new Annotation[kept];
+        int i = 0;
+        for (Annotation annotation : annotations) {
+            if (!isRouting(annotation)) {
+                result[i++] = annotation;
+            }
+        }
+        return result;
+    }
+
+    private static boolean isRouting(Annotation annotation) {
+        return annotation instanceof GET || annotation instanceof POST || annotation instanceof Path
+                || annotation instanceof Query || annotation instanceof Body;
+    }
+
+    static final class Key {
+        private final Kind kind;
+        private final Type type;
+        private final Annotation[] annotations;
+        private final Annotation[] methodAnnotations;
+        private final int hashCode;
+
+        Key(Kind kind, Type type, Annotation[] annotations, Annotation[] methodAnnotations) {
+            this.kind = kind;
+            this.type = type;
+            this.annotations = annotations;
+            this.methodAnnotations = methodAnnotations;
+            this.hashCode = 31 * (31 * (31 * kind.hashCode() + type.hashCode())
+                    + Arrays.hashCode(annotations)) + Arrays.hashCode(methodAnnotations);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return kind == other.kind
+                    && type.equals(other.type)
+                    && Arrays.equals(annotations, other.annotations)
+                    && Arrays.equals(methodAnnotations, other.methodAnnotations);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
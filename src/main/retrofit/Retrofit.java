@@ -1,84 +1,315 @@
 package main.retrofit;
 
+import main.retrofit.processor.ServiceProcessor;
 import okhttp3.*;
 
 import java.lang.annotation.Annotation;
-import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.lang.reflect.Proxy;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by pc on 2018/5/29.
  */
 public class Retrofit {
 
+    /** Constructors of build-time generated service implementations, keyed by service interface. */
+    private static final ClassValue<Optional<Constructor<?>>> GENERATED_SERVICES =
+            new ClassValue<Optional<Constructor<?>>>() {
+                @Override
+                protected Optional<Constructor<?>> computeValue(Class<?> service) {
+                    String name = service.getName();
+                    int packageEnd = name.lastIndexOf('.') + 1;
+                    String implName = name.substring(0, packageEnd)
+                            + name.substring(packageEnd).replace('$', '_')
+                            + ServiceProcessor.IMPL_SUFFIX;
+                    try {
+                        Class<?> impl = Class.forName(implName, false, service.getClassLoader());
+                        return Optional.<Constructor<?>>of(impl.getConstructor(Retrofit.class));
+                    } catch (ClassNotFoundException | NoSuchMethodException e) {
+                        return Optional.empty();
+                    }
+                }
+            };
+
+    /** Service methods bound to this instance's base URL and client. */
+    private final Map<Method, ServiceMethod<?, ?>> serviceMethodCache = new ConcurrentHashMap<>();
+    private final Model model;
+    private final ResolutionCache resolutionCache;
+
     List<CallAdapter.Factory> callAdapterFactoryList;
+    /** The default factory {@link Builder#build()} put in front of the others; null if constructed directly. */
+    private final CallAdapter.Factory defaultCallAdapterFactory;
     OkHttpClient client = new OkHttpClient();
+    /** Whether {@link #client} came from the caller rather than from {@link Builder#build()}. */
+    private final boolean clientProvided;
 
      HttpUrl baseUrl;
     private List<Converter.Factory> factoryList;
     private boolean validateEagerly;
     private Executor executor;
+    private boolean virtualThreads;
+    boolean singleFlight;
+    boolean adaptiveConcurrency;
+    boolean circuitBreakers;
+    private final Circuit.Listener circuitListener;
+    private final ConcurrentHashMap<String, Circuit> circuits = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Compartment> compartments = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, RateLimiter> rateLimiters = new ConcurrentHashMap<>();
+    final PriorityScheduler scheduler;
+    final long callTimeoutNanos;
+    private final double hedgeRatio;
+    private final double retryRatio;
+    final CallCoalescer coalescer = new CallCoalescer();
+    final TokenBudget hedgeBudget;
+    final TokenBudget retryBudget;
 
     public Retrofit(HttpUrl baseUrl, List<Converter.Factory> factoryList, OkHttpClient client,
                     boolean validateEagerly, List<CallAdapter.Factory> callAdapterFactoryList,
                     Executor executor) {
+        this(baseUrl, factoryList, client, validateEagerly, callAdapterFactoryList, executor, false, false,
+                false, false, null, false, 0, Builder.DEFAULT_HEDGE_BUDGET, Builder.DEFAULT_RETRY_BUDGET,
+                new Model(), null, true);
+    }
+
+    Retrofit(HttpUrl baseUrl, List<Converter.Factory> factoryList, OkHttpClient client,
+             boolean validateEagerly, List<CallAdapter.Factory> callAdapterFactoryList,
+             Executor executor, boolean virtualThreads, boolean singleFlight,
+             boolean adaptiveConcurrency, boolean circuitBreakers, Circuit.Listener circuitListener,
+             boolean priorityScheduling, long callTimeoutNanos, double hedgeBudget, double retryBudget,
+             Model model, CallAdapter.Factory defaultCallAdapterFactory, boolean clientProvided) {
+        this.model = model;
+        this.resolutionCache = model.resolutionCache;
         this.baseUrl = baseUrl;
         this.factoryList = factoryList;
         this.client = client;
+        this.clientProvided = clientProvided;
         this.validateEagerly = validateEagerly;
         this.callAdapterFactoryList = callAdapterFactoryList;
+        this.defaultCallAdapterFactory = defaultCallAdapterFactory;
         this.executor = executor;
+        this.virtualThreads = virtualThreads;
+        this.singleFlight = singleFlight;
+        this.adaptiveConcurrency = adaptiveConcurrency;
+        this.circuitBreakers = circuitBreakers;
+        this.circuitListener = circuitListener;
+        this.scheduler = priorityScheduling ? PriorityScheduler.of(client.dispatcher()) : null;
+        this.callTimeoutNanos = callTimeoutNanos;
+        this.hedgeBudget = new TokenBudget(hedgeBudget);
+        this.hedgeRatio = hedgeBudget;
+        this.retryBudget = new TokenBudget(retryBudget);
+        this.retryRatio = retryBudget;
     }
 
     public <T> T create(final Class<T> service) {
+        validateServiceInterface(service);
+        if(validateEagerly){
+            validate(service);
+        }
+        Constructor<?> generated = GENERATED_SERVICES.get(service).orElse(null);
+        if(generated != null){
+            try {
+                return (T) generated.newInstance(this);
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new RuntimeException(cause);
+            } catch (ReflectiveOperationException e) {
+                throw new AssertionError(e);
+            }
+        }
+        return (T) Proxy.newProxyInstance(service.getClassLoader(), new Class<?>[]{service},
+                new ServiceInvocationHandler(this, service));
+    }
+
+    /**
+     * Returns the cached {@link ServiceMethod} for {@code service.name(parameterTypes)}, parsing it on
+     * first use. This is the entry point for implementations generated by
+     * {@link main.retrofit.processor.ServiceProcessor}.
+     */
+    public ServiceMethod<?, ?> serviceMethod(Class<?> service, String name, Class<?>... parameterTypes) {
+        try {
+            return loadServiceMethod(service.getDeclaredMethod(name, parameterTypes));
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private static void validateServiceInterface(Class<?> service) {
         if (!service.isInterface()) {
             throw new IllegalArgumentException("API declarations must be interfaces.");
         }
         if (service.getInterfaces().length > 0) {
             throw new IllegalArgumentException("API interfaces must not extend other interfaces.");
         }
-        if(validateEagerly){
-            for(Method method : service.getDeclaredMethods()){
-                if(method.getReturnType().getName().equals("void")){
-                    throw new IllegalArgumentException("Service methods cannot return void.\n    for method "
-                            + method.getDeclaringClass().getSimpleName() + "."+ method.getName());
-                }
+    }
+
+    /**
+     * Parses every method declared by {@code service} in parallel on the common fork-join pool and
+     * caches the results, so the first real call of each method does not pay for it. Returns the
+     * parse time of each method in nanoseconds. If any method is invalid, the failure of the first
+     * such method is rethrown as-is.
+     */
+    public Map<Method, Long> validate(Class<?> service) {
+        validateServiceInterface(service);
+        List<ParseTask> tasks = new ArrayList<>();
+        for (Method method : service.getDeclaredMethods()) {
+            if (method.isDefault() || Modifier.isStatic(method.getModifiers())) {
+                continue;
             }
+            tasks.add(new ParseTask(this, method));
         }
-        return (T) Proxy.newProxyInstance(service.getClassLoader(), new Class<?>[]{service},
-                new InvocationHandler() {
-                    @Override
-                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-                        if (method.getDeclaringClass() == Object.class) {
-                            return method.invoke(this, args);
-                        }
-                        OkHttpCall okHttpCall = ServiceMethod.generateOkHttpCall(Retrofit.this, method, args);
-                        return okHttpCall.adapt();
-                    }
-                });
+        ForkJoinTask.invokeAll(tasks);
+        Map<Method, Long> report = new LinkedHashMap<>();
+        for (ParseTask task : tasks) {
+            if (task.failure instanceof RuntimeException) {
+                throw (RuntimeException) task.failure;
+            }
+            if (task.failure instanceof Error) {
+                throw (Error) task.failure;
+            }
+            report.put(task.method, task.nanos);
+        }
+        return report;
+    }
+
+    private static final class ParseTask extends RecursiveAction {
+        private final Retrofit retrofit;
+        final Method method;
+        long nanos;
+        Throwable failure;
+
+        ParseTask(Retrofit retrofit, Method method) {
+            this.retrofit = retrofit;
+            this.method = method;
+        }
+
+        @Override
+        protected void compute() {
+            long start = System.nanoTime();
+            try {
+                retrofit.loadServiceMethod(method);
+            } catch (RuntimeException | Error e) {
+                failure = e;
+            }
+            nanos = System.nanoTime() - start;
+        }
+    }
+
+    ServiceMethod<?, ?> loadServiceMethod(Method method) {
+        ServiceMethod<?, ?> result = serviceMethodCache.get(method);
+        if (result != null) {
+            return result;
+        }
+        ServiceMethod<?, ?> parsed = model.serviceMethods.get(method);
+        if (parsed == null) {
+            parsed = ServiceMethod.parse(this, method);
+            ServiceMethod<?, ?> existing = model.serviceMethods.putIfAbsent(method, parsed);
+            if (existing != null) {
+                parsed = existing;
+            }
+        }
+        result = parsed.isBoundTo(this) ? parsed : parsed.bind(this);
+        ServiceMethod<?, ?> existing = serviceMethodCache.putIfAbsent(method, result);
+        return existing != null ? existing : result;
+    }
+
+    /**
+     * What parsing produces apart from the host binding: service methods as parsed by whichever
+     * instance got to them first, and resolved converters and call adapters. Instances derived with
+     * {@link #newBuilder()} share it with their parent as long as only the base URL or the client
+     * changes, so their methods are rebound rather than parsed again.
+     */
+    static final class Model {
+        final Map<Method, ServiceMethod<?, ?>> serviceMethods = new ConcurrentHashMap<>();
+        final ResolutionCache resolutionCache = new ResolutionCache();
     }
 
     Converter<ResponseBody, ?> searchForResponseConverter(Type genericReturnType, Annotation[] declaredAnnotations) {
+        ResolutionCache.Key key = ResolutionCache.key(ResolutionCache.Kind.RESPONSE_CONVERTER,
+                genericReturnType, declaredAnnotations, null);
+        Converter<ResponseBody, ?> converter = resolutionCache.get(key);
+        if(converter != null){
+            return converter;
+        }
         for(Converter.Factory factory : factoryList){
-            if(factory.responseBodyConverter(genericReturnType, declaredAnnotations, this) != null){
-                return factory.responseBodyConverter(genericReturnType, declaredAnnotations, this);
+            converter = factory.responseBodyConverter(genericReturnType, declaredAnnotations, this);
+            if(converter != null){
+                return resolutionCache.put(key, converter);
             }
         }
-        return BuiltInConverters.INSTANCE.responseBodyConverter(genericReturnType, declaredAnnotations, this);
+        converter = BuiltInConverters.INSTANCE.responseBodyConverter(genericReturnType, declaredAnnotations, this);
+        return resolutionCache.put(key, converter);
     }
 
-    Converter<?, RequestBody> searchForRequestConverter(Type genericReturnType, Annotation[] parameterAnnotations, Annotation[] declaredAnnotations) {
+    Converter<?, RequestBody> searchForRequestConverter(Type type, Annotation[] parameterAnnotations, Annotation[] declaredAnnotations) {
+        ResolutionCache.Key key = ResolutionCache.key(ResolutionCache.Kind.REQUEST_CONVERTER,
+                type, parameterAnnotations, declaredAnnotations);
+        Converter<?, RequestBody> converter = resolutionCache.get(key);
+        if(converter != null){
+            return converter;
+        }
         for(Converter.Factory factory : factoryList){
-            if(factory.requestBodyConverter(genericReturnType, parameterAnnotations, declaredAnnotations, this) != null){
-                return factory.requestBodyConverter(genericReturnType, parameterAnnotations, declaredAnnotations, this);
+            converter = factory.requestBodyConverter(type, parameterAnnotations, declaredAnnotations, this);
+            if(converter != null){
+                return resolutionCache.put(key, converter);
             }
         }
-        return BuiltInConverters.INSTANCE.requestBodyConverter(genericReturnType, parameterAnnotations, declaredAnnotations, this);
+        converter = BuiltInConverters.INSTANCE.requestBodyConverter(type, parameterAnnotations, declaredAnnotations, this);
+        return converter != null ? resolutionCache.put(key, converter) : null;
+    }
+
+    /**
+     * Returns a converter for turning {@code type} into a {@code String} for @Path and @Query values,
+     * falling back to {@link Object#toString()} when no factory provides one.
+     */
+    <T> Converter<T, String> stringConverter(Type type, Annotation[] annotations) {
+        ResolutionCache.Key key = ResolutionCache.key(ResolutionCache.Kind.STRING_CONVERTER,
+                type, annotations, null);
+        Converter<?, String> converter = resolutionCache.get(key);
+        if(converter == null){
+            for(Converter.Factory factory : factoryList){
+                converter = factory.stringConverter(type, annotations, this);
+                if(converter != null){
+                    break;
+                }
+            }
+            if(converter == null){
+                converter = BuiltInConverters.ToStringConverter.INSTANCE;
+            }
+            converter = resolutionCache.put(key, converter);
+        }
+        return (Converter<T, String>) converter;
+    }
+
+    /** Returns the call adapter factories this instance was given, without the default one. */
+    List<CallAdapter.Factory> addedCallAdapterFactories() {
+        List<CallAdapter.Factory> factories = callAdapterFactoryList;
+        if (defaultCallAdapterFactory != null && !factories.isEmpty()
+                && factories.get(0) == defaultCallAdapterFactory) {
+            return factories.subList(1, factories.size());
+        }
+        return factories;
     }
 
     public Builder newBuilder() {
@@ -86,13 +317,67 @@ public class Retrofit {
     }
 
     public CallAdapter getCallAdapter(Type returnType, Annotation[] declaredAnnotations, Retrofit retrofit) {
+        ResolutionCache.Key key = ResolutionCache.key(ResolutionCache.Kind.CALL_ADAPTER,
+                returnType, declaredAnnotations, null);
+        CallAdapter adapter = resolutionCache.get(key);
+        if(adapter != null){
+            return adapter;
+        }
         for(CallAdapter.Factory factory : callAdapterFactoryList){
-            CallAdapter adapter = factory.get(returnType, declaredAnnotations, retrofit);
+            adapter = factory.get(returnType, declaredAnnotations, retrofit);
             if(adapter != null){
-                return adapter;
+                return resolutionCache.put(key, adapter);
             }
         }
-        return null;
+        adapter = CompletableFutureCallAdapterFactory.INSTANCE.get(returnType, declaredAnnotations, retrofit);
+        if(adapter == null){
+            adapter = PublisherCallAdapterFactory.INSTANCE.get(returnType, declaredAnnotations, retrofit);
+        }
+        if(adapter == null && virtualThreads){
+            adapter = BlockingCallAdapterFactory.INSTANCE.get(returnType, declaredAnnotations, retrofit);
+        }
+        return adapter != null ? resolutionCache.put(key, adapter) : null;
+    }
+
+    /**
+     * Returns the circuit breaker guarding the method {@code Service.method} or the host
+     * {@code name}, or null if there is none. Circuits are created as the methods they guard are
+     * first used.
+     */
+    public Circuit circuit(String name) {
+        return circuits.get(name);
+    }
+
+    /** Returns this instance's circuit {@code name}, creating it with {@code template}'s settings. */
+    Circuit circuitFor(Circuit template, String name) {
+        return circuits.computeIfAbsent(name, key -> template.copy(key, circuitListener));
+    }
+
+    /**
+     * Returns the compartment of the {@link main.retrofit.okhttp.Bulkhead} group {@code name}, or
+     * null if there is none. Compartments are created as the methods they hold are first used.
+     */
+    public Compartment bulkhead(String name) {
+        return compartments.get(name);
+    }
+
+    /** Returns a live view of this instance's compartments, to report how full each one is. */
+    public Collection<Compartment> bulkheads() {
+        return Collections.unmodifiableCollection(compartments.values());
+    }
+
+    /** Returns this instance's compartment named like {@code template}, creating it from its settings. */
+    Compartment bulkheadFor(Compartment template) {
+        return compartments.computeIfAbsent(template.name(), name -> template.copy());
+    }
+
+    /** Returns this instance's rate limiter for {@code host}, creating it with {@code template}'s settings. */
+    RateLimiter rateLimiterFor(RateLimiter template, String host) {
+        return rateLimiters.computeIfAbsent(host, key -> template.copy(key));
+    }
+
+    RateLimiter rateLimiter(String host) {
+        return rateLimiters.get(host);
     }
 
     public HttpUrl baseUrl() {
@@ -109,12 +394,27 @@ public class Retrofit {
 
     public static class Builder {
 
+        static final double DEFAULT_HEDGE_BUDGET = 0.1;
+        static final double DEFAULT_RETRY_BUDGET = 0.2;
+
         private HttpUrl baseUrl;
         private List<Converter.Factory> factoryList = new ArrayList<>();
         private OkHttpClient client = new OkHttpClient();
+        /** Whether {@link #client} came from the caller, whose dispatcher is then left alone. */
+        private boolean clientProvided;
         private boolean validateEagerly;
         private List<CallAdapter.Factory> callAdapterFactoryList;
         private Executor executor;
+        private boolean virtualThreads;
+        private boolean singleFlight;
+        private boolean adaptiveConcurrency;
+        private boolean circuitBreakers;
+        private Circuit.Listener circuitListener;
+        private boolean priorityScheduling;
+        private long callTimeoutNanos;
+        private double hedgeBudget = DEFAULT_HEDGE_BUDGET;
+        private double retryBudget = DEFAULT_RETRY_BUDGET;
+        private Retrofit parent;
 
         public Builder() {
             this.callAdapterFactoryList = new ArrayList<>();
@@ -123,10 +423,23 @@ public class Retrofit {
 
         public Builder(Retrofit retrofit) {
             this.client = retrofit.client;
+            this.clientProvided = retrofit.clientProvided;
             this.baseUrl = retrofit.baseUrl;
-            this.factoryList = retrofit.factoryList;
-            this.callAdapterFactoryList = retrofit.callAdapterFactoryList;
-            callAdapterFactoryList.add(CallAdapter.FACTORY_INSTANCE);
+            this.factoryList = new ArrayList<>(retrofit.factoryList);
+            // Without the default adapter build() put in front; build() adds it back.
+            this.callAdapterFactoryList = new ArrayList<>(retrofit.addedCallAdapterFactories());
+            this.validateEagerly = retrofit.validateEagerly;
+            this.executor = retrofit.executor;
+            this.virtualThreads = retrofit.virtualThreads;
+            this.singleFlight = retrofit.singleFlight;
+            this.adaptiveConcurrency = retrofit.adaptiveConcurrency;
+            this.circuitBreakers = retrofit.circuitBreakers;
+            this.circuitListener = retrofit.circuitListener;
+            this.priorityScheduling = retrofit.scheduler != null;
+            this.callTimeoutNanos = retrofit.callTimeoutNanos;
+            this.hedgeBudget = retrofit.hedgeRatio;
+            this.retryBudget = retrofit.retryRatio;
+            this.parent = retrofit;
         }
 
         public Builder baseUrl(HttpUrl url) {
@@ -165,9 +478,38 @@ public class Retrofit {
                 throw new IllegalStateException("Base URL required.");
             }
             Executor callbackExecutor = executor;
+            CallAdapter.Factory defaultCallAdapterFactory = defaultCallAdapterFactory(callbackExecutor);
             List<CallAdapter.Factory> callAdapterFactories = new ArrayList<>(callAdapterFactoryList);
-            callAdapterFactories.add(0, defaultCallAdapterFactory(callbackExecutor));
-            return new Retrofit(baseUrl, factoryList, client, validateEagerly, callAdapterFactories, executor);
+            callAdapterFactories.add(0, defaultCallAdapterFactory);
+            List<Converter.Factory> converterFactories = new ArrayList<>(factoryList);
+            Model model = parent != null && sharesModelWith(parent, converterFactories)
+                    ? parent.model
+                    : new Model();
+            OkHttpClient client = virtualThreads && !clientProvided
+                    ? VirtualThreads.dispatchOn(this.client)
+                    : this.client;
+            return new Retrofit(baseUrl, converterFactories, client, validateEagerly, callAdapterFactories,
+                    executor, virtualThreads, singleFlight, adaptiveConcurrency, circuitBreakers, circuitListener,
+                    priorityScheduling, callTimeoutNanos, hedgeBudget, retryBudget, model,
+                    defaultCallAdapterFactory, clientProvided);
+        }
+
+        /**
+         * Parsed methods and resolved converters only depend on the factories and the callback
+         * executor, so a derived instance that keeps those can reuse its parent's. A parent that was
+         * constructed directly has no default call adapter in front, so its methods may have
+         * resolved differently.
+         */
+        private boolean sharesModelWith(Retrofit parent, List<Converter.Factory> converterFactories) {
+            return parent.defaultCallAdapterFactory != null
+                    && executor == parent.executor
+                    && virtualThreads == parent.virtualThreads
+                    && singleFlight == parent.singleFlight
+                    && adaptiveConcurrency == parent.adaptiveConcurrency
+                    && circuitBreakers == parent.circuitBreakers
+                    && priorityScheduling == (parent.scheduler != null)
+                    && converterFactories.equals(parent.factoryList)
+                    && callAdapterFactoryList.equals(parent.addedCallAdapterFactories());
         }
 
         CallAdapter.Factory defaultCallAdapterFactory(Executor callbackExecutor) {
@@ -182,6 +524,7 @@ public class Retrofit {
                 throw new NullPointerException("client == null");
             }
             this.client = client;
+            this.clientProvided = true;
             return this;
         }
 
@@ -194,6 +537,118 @@ public class Retrofit {
             return this;
         }
 
+        /**
+         * Dispatches asynchronous calls on virtual threads, on a runtime that has them, instead of
+         * OkHttp's own thread pool. On Java 8, which this
+         * library targets, there are no virtual threads: calls run on an unbounded pool of daemon
+         * threads, which is no cheaper than OkHttp's default, and this mode does nothing useful.
+         *
+         * <p>Service methods may also be declared to return {@code T} or {@code Response<T>}
+         * directly, where {@code T} is a plain body type rather than a {@code Call}, {@code Future}
+         * or similar. They execute on the calling thread, not on a virtual thread of their own, so
+         * they are only cheap when the caller is running on one.
+         *
+         * <p>Only the client Retrofit creates itself is given a virtual-thread dispatcher. A
+         * {@link #client(OkHttpClient) client} passed in is used as it is, so that its dispatcher's
+         * {@code cancelAll()}, request limits and idle callback keep covering Retrofit's calls; give
+         * it a {@code Dispatcher} on a virtual-thread executor to dispatch its calls that way.
+         *
+         * <p>Callbacks run on the thread that completed the call unless a
+         * {@link #callbackExecutor(Executor) callback executor} is set, so the hop through it is
+         * opt-in rather than required.
+         */
+        public Builder virtualThreads(boolean virtualThreads) {
+            this.virtualThreads = virtualThreads;
+            return this;
+        }
+
+        /**
+         * Coalesces identical in-flight calls of every {@code @GET} method, as if each were annotated
+         * {@link main.retrofit.okhttp.SingleFlight}. Calls are only shared within one Retrofit
+         * instance.
+         */
+        public Builder singleFlight(boolean singleFlight) {
+            this.singleFlight = singleFlight;
+            return this;
+        }
+
+        /**
+         * Gives every service method an adaptive limit on its calls in flight, as if each were
+         * annotated {@link main.retrofit.okhttp.ConcurrencyLimit} with its defaults.
+         */
+        public Builder adaptiveConcurrency(boolean adaptiveConcurrency) {
+            this.adaptiveConcurrency = adaptiveConcurrency;
+            return this;
+        }
+
+        /**
+         * Guards every service method with a circuit breaker per host, as if each were annotated
+         * {@link main.retrofit.okhttp.CircuitBreaker} with {@code perHost = true}.
+         */
+        public Builder circuitBreakers(boolean circuitBreakers) {
+            this.circuitBreakers = circuitBreakers;
+            return this;
+        }
+
+        /** Reports every transition of this instance's {@link Circuit circuits} to {@code listener}. */
+        public Builder circuitListener(Circuit.Listener listener) {
+            this.circuitListener = listener;
+            return this;
+        }
+
+        /**
+         * Starts asynchronous calls in {@link main.retrofit.okhttp.Priority} order instead of the
+         * order they were enqueued, so that bulk traffic sharing the client cannot hold up urgent
+         * calls. Calls are held back until the client's {@link okhttp3.Dispatcher} has room for them
+         * and then handed over highest priority first. Instances sharing a dispatcher share its
+         * schedule.
+         */
+        public Builder priorityScheduling(boolean priorityScheduling) {
+            this.priorityScheduling = priorityScheduling;
+            return this;
+        }
+
+        /**
+         * Gives every call a deadline of {@code timeout}, as if each method were annotated
+         * {@link main.retrofit.okhttp.Timeout}; methods with their own annotation keep it. Zero, the
+         * default, means none.
+         */
+        public Builder callTimeout(long timeout, TimeUnit unit) {
+            if (unit == null) {
+                throw new NullPointerException("unit == null");
+            }
+            if (timeout < 0) {
+                throw new IllegalArgumentException("timeout < 0: " + timeout);
+            }
+            this.callTimeoutNanos = unit.toNanos(timeout);
+            return this;
+        }
+
+        /**
+         * Limits {@link main.retrofit.okhttp.Hedge hedged} attempts to {@code ratio} of the calls
+         * made to hedged methods, 0.1 by default. Zero disables hedging.
+         */
+        public Builder hedgeBudget(double ratio) {
+            if (ratio < 0 || ratio > 1) {
+                throw new IllegalArgumentException("ratio must be between 0 and 1: " + ratio);
+            }
+            this.hedgeBudget = ratio;
+            return this;
+        }
+
+        /**
+         * Limits {@link main.retrofit.okhttp.Retry retries} to {@code ratio} of the calls made to
+         * retried methods, 0.2 by default, plus a small reserve for the first failures. Once it is
+         * spent, failures are delivered without retrying. Zero disables retries.
+         */
+        public Builder retryBudget(double ratio) {
+            if (ratio < 0 || ratio > 1) {
+                throw new IllegalArgumentException("ratio must be between 0 and 1: " + ratio);
+            }
+            this.retryBudget = ratio;
+            return this;
+        }
+
         public Builder addCallAdapterFactory(CallAdapter.Factory callAdapterFactory) {
             this.callAdapterFactoryList.add(callAdapterFactory);
             return this;
@@ -0,0 +1,182 @@
+package main.retrofit;
+
+import main.retrofit.okhttp.Retry;
+import okhttp3.Request;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A call that starts a clone of its last attempt when that attempt fails in a retryable way; see
+ * {@link Retry}. Only the final attempt's outcome is delivered, and cancelling stops both the
+ * running attempt and any retry still waiting on the timer.
+ */
+final class RetryingCall<T> implements Call<T> {
+
+    private final Call<T> first;
+    private final Policy policy;
+    private final TokenBudget budget;
+    private final AtomicBoolean executed = new AtomicBoolean();
+    private final AtomicBoolean delivered = new AtomicBoolean();
+    private volatile Callback<T> callback;
+    private volatile Call<T> current;
+    private volatile Timers.Timeout timer;
+    private volatile boolean canceled;
+
+    RetryingCall(Call<T> first, Policy policy, TokenBudget budget) {
+        this.first = first;
+        this.policy = policy;
+        this.budget = budget;
+    }
+
+    @Override
+    public Response<T> execute() throws IOException {
+        return Utils.awaitEnqueued(this);
+    }
+
+    @Override
+    public void enqueue(Callback<T> callback) {
+        if (callback == null) {
+            throw new NullPointerException("callback == null");
+        }
+        if (!executed.compareAndSet(false, true)) {
+            throw new IllegalStateException("Already executed.");
+        }
+        this.callback = callback;
+        budget.recordCall();
+        attempt(first, 1, policy.baseDelayNanos);
+    }
+
+    private void attempt(Call<T> call, final int attempt, final long delayNanos) {
+        current = call;
+        if (canceled) {
+            // Started anyway so that the cancellation is reported the way the call reports it.
+            call.cancel();
+        }
+        callback.onAttempt(this, attempt);
+        call.enqueue(new Callback<T>() {
+            @Override
+            public void onResponse(Call<T> call, Response<T> response) {
+                if (response.isSuccessful() || !policy.retries(response.code())
+                        || !retry(attempt, delayNanos, response, null)) {
+                    if (delivered.compareAndSet(false, true)) {
+                        callback.onResponse(RetryingCall.this, response);
+                    }
+                }
+            }
+
+            @Override
+            public void onFailure(Call<T> call, Throwable t) {
+                // An open circuit stays open far longer than any backoff; retrying it only burns budget.
+                if (!(t instanceof IOException) || t instanceof CircuitOpenException
+                        || !retry(attempt, delayNanos, null, t)) {
+                    fail(t);
+                }
+            }
+        });
+    }
+
+    /** Schedules the attempt after {@code attempt} if it is allowed, returning false otherwise. */
+    private boolean retry(final int attempt, long previousDelayNanos, Response<T> response, Throwable failure) {
+        if (canceled || attempt >= policy.maxAttempts || !budget.tryAcquire()) {
+            return false;
+        }
+        final long delayNanos = policy.nextDelayNanos(previousDelayNanos);
+        callback.onRetry(this, attempt, response, failure, TimeUnit.NANOSECONDS.toMillis(delayNanos));
+        final Call<T> next = current.clone();
+        Timers.Timeout scheduled = Timers.schedule(new Runnable() {
+            @Override
+            public void run() {
+                attempt(next, attempt + 1, delayNanos);
+            }
+        }, delayNanos);
+        timer = scheduled;
+        if (canceled && scheduled.cancel()) {
+            fail(new IOException("Canceled"));
+        }
+        return true;
+    }
+
+    private void fail(Throwable t) {
+        if (delivered.compareAndSet(false, true)) {
+            callback.onFailure(this, t);
+        }
+    }
+
+    @Override
+    public boolean isExecuted() {
+        return executed.get();
+    }
+
+    @Override
+    public void cancel() {
+        canceled = true;
+        Timers.Timeout pendingTimer = timer;
+        if (pendingTimer != null && pendingTimer.cancel()) {
+            fail(new IOException("Canceled"));
+        }
+        Call<T> attempt = current;
+        (attempt != null ? attempt : first).cancel();
+    }
+
+    @Override
+    public boolean isCanceled() {
+        return canceled;
+    }
+
+    @Override
+    public Call<T> clone() {
+        return new RetryingCall<>(first.clone(), policy, budget);
+    }
+
+    @Override
+    public Request request() {
+        return first.request();
+    }
+
+    /** A method's {@link Retry} settings. */
+    static final class Policy {
+        final int maxAttempts;
+        final long baseDelayNanos;
+        final long maxDelayNanos;
+        private final int[] statusCodes;
+
+        Policy(Retry retry) {
+            if (retry.maxAttempts() < 1) {
+                throw new IllegalArgumentException("@Retry maxAttempts must be at least 1.");
+            }
+            if (retry.baseDelayMillis() < 0 || retry.maxDelayMillis() < retry.baseDelayMillis()) {
+                throw new IllegalArgumentException(
+                        "@Retry delays must satisfy 0 <= baseDelayMillis <= maxDelayMillis.");
+            }
+            this.maxAttempts = retry.maxAttempts();
+            this.baseDelayNanos = TimeUnit.MILLISECONDS.toNanos(retry.baseDelayMillis());
+            this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(retry.maxDelayMillis());
+            this.statusCodes = retry.statusCodes().clone();
+        }
+
+        boolean retries(int code) {
+            for (int statusCode : statusCodes) {
+                if (statusCode == code) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Decorrelated jitter: a delay drawn between the base delay and three times the previous
+         * one, capped. Delays grow like exponential backoff but callers that failed together spread
+         * out instead of retrying in lockstep.
+         */
+        long nextDelayNanos(long previousDelayNanos) {
+            long upper = previousDelayNanos > maxDelayNanos / 3 ? maxDelayNanos : previousDelayNanos * 3;
+            if (upper <= baseDelayNanos) {
+                return baseDelayNanos;
+            }
+            return ThreadLocalRandom.current().nextLong(baseDelayNanos, upper + 1);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package main.retrofit;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Dispatches proxy calls for services without a generated implementation. Each service method is
+ * bound to its {@link ServiceMethod} the first time the proxy is called with it, so later calls
+ * skip the declaring-class check and the Retrofit instance's method cache. Object methods are
+ * answered directly rather than reflectively.
+ */
+final class ServiceInvocationHandler implements InvocationHandler {
+
+    private final Retrofit retrofit;
+    private final Class<?> service;
+    /**
+     * The proxy's bound methods. A proxy class passes the same {@link Method} objects on every
+     * call, so they are keyed by identity; the map is copied on write and never changes once read.
+     */
+    private volatile Map<Method, ServiceMethod<?, ?>> bound = Collections.emptyMap();
+
+    ServiceInvocationHandler(Retrofit retrofit, Class<?> service) {
+        this.retrofit = retrofit;
+        this.service = service;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        ServiceMethod<?, ?> serviceMethod = bound.get(method);
+        if (serviceMethod == null) {
+            if (method.getDeclaringClass() == Object.class) {
+                return invokeObjectMethod(proxy, method, args);
+            }
+            serviceMethod = bind(method);
+        }
+        return serviceMethod.invoke(args);
+    }
+
+    private synchronized ServiceMethod<?, ?> bind(Method method) {
+        ServiceMethod<?, ?> serviceMethod = bound.get(method);
+        if (serviceMethod == null) {
+            serviceMethod = retrofit.loadServiceMethod(method);
+            Map<Method, ServiceMethod<?, ?>> copy = new IdentityHashMap<>(bound);
+            copy.put(method, serviceMethod);
+            bound = copy;
+        }
+        return serviceMethod;
+    }
+
+    private Object invokeObjectMethod(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return service.getName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+            default:
+                throw new AssertionError(method);
+        }
+    }
+}
@@ -1,41 +1,81 @@
 package main.retrofit;
 
-import com.google.caliper.Param;
-import com.google.inject.internal.MoreTypes;
 import main.retrofit.okhttp.*;
 import okhttp3.*;
-import okio.BufferedSink;
-import sun.reflect.generics.reflectiveObjects.ParameterizedTypeImpl;
 
 import java.io.IOException;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by pc on 2018/6/9.
  */
 public class ServiceMethod<R, T> {
 
-    private static Map<Method, ServiceMethod> cache = new HashMap<>();
-
     String method;
-    String baseUrl;
-    Converter<String, RequestBody> requestBodyConverter;
+    HttpUrl baseUrl;
+    UrlTemplate relativeUrl;
+    /** The host of a full relative URL, which no base URL changes; null for relative ones. */
+    String fixedHost;
+    ParameterHandler<?>[] parameterHandlers;
     Converter<ResponseBody, ?> responseBodyConverter;
-    Annotation[][] parameterAnnotations;
     Annotation[] declaredAnnotations;
     CallAdapter<R, T> callAdapter;
     OkHttpClient client;
+    /** Set when identical in-flight calls of this method share one network call. */
+    CallCoalescer coalescer;
+    /** Set for {@link Hedge} methods, along with the budget their hedges draw from. */
+    HedgingCall.Policy hedge;
+    TokenBudget hedgeBudget;
+    /** Set for {@link Retry} methods, along with the budget their retries draw from. */
+    RetryingCall.Policy retry;
+    TokenBudget retryBudget;
+    /**
+     * Set for {@link ConcurrencyLimit} methods. Retrofit instances that share a base URL and client
+     * call the same server the same way, so they share the limit too.
+     */
+    ConcurrencyLimiter limiter;
+    /** Set for {@link CircuitBreaker} methods; it is the {@code Retrofit}'s circuit of that name. */
+    Circuit circuit;
+    /** Whether {@link #circuit} is named after the host rather than the method. */
+    boolean circuitPerHost;
+    /** Set for {@link RateLimit} methods; it is the {@code Retrofit}'s bucket for their host. */
+    RateLimiter rateLimiter;
+    /** How long a call may wait for its token, or -1 to wait as long as it takes. */
+    long rateLimitWaitNanos = -1;
+    /** Set for {@link Batch} methods; it sends their keys through this {@code Retrofit}. */
+    Batcher<Object, R> batcher;
+    /** Set for {@link Bulkhead} methods; it is the {@code Retrofit}'s compartment of that name. */
+    Compartment bulkhead;
+    /** Set when asynchronous calls are started in {@link Priority} order. */
+    PriorityScheduler scheduler;
+    int priority = Priority.NORMAL;
+    /** The index of the {@link Priority} parameter, or -1 if calls take the method's priority. */
+    int priorityParameter = -1;
+    /** The {@link Timeout} of this method in nanoseconds, or -1 if it takes the instance default. */
+    long timeoutNanos = -1;
+    long callTimeoutNanos;
+    /** The index of the {@link Timeout} parameter, or -1 if calls take the method's deadline. */
+    int timeoutParameter = -1;
+    TimeUnit timeoutParameterUnit;
+    /**
+     * The request for a method without parameters, built by its first call. {@link Request} is
+     * immutable, so every later call shares it; racing first calls at worst build it twice.
+     */
+    private volatile Request prototype;
 
-    public static OkHttpCall generateOkHttpCall(Retrofit retrofit, Method method, Object[] args) {
+    /**
+     * Validates {@code method} and resolves everything a call needs up front, so that invoking the
+     * service method afterwards only has to bind arguments.
+     */
+    static ServiceMethod<?, ?> parse(Retrofit retrofit, Method method) {
         Type returnType = method.getGenericReturnType();
-        if(returnType instanceof Class && ((Class) returnType).getName().equals("void")){
+        if(returnType == void.class){
             throw new IllegalArgumentException("Service methods cannot return void.\n    for method "
                     + method.getDeclaringClass().getSimpleName() + "."+ method.getName());
         }
@@ -48,9 +88,8 @@ public class ServiceMethod<R, T> {
             }
         }
         Type responseType;
-        if(returnType instanceof ParameterizedTypeImpl){
-            Type[] actualTypeArguments = ((ParameterizedTypeImpl) returnType).getActualTypeArguments();
-            responseType = actualTypeArguments[0];
+        if(returnType instanceof ParameterizedType){
+            responseType = ((ParameterizedType) returnType).getActualTypeArguments()[0];
         }else{
             responseType = returnType;
         }
@@ -63,84 +102,440 @@ public class ServiceMethod<R, T> {
                     + "."
                     + method.getName());
         }
-        if(cache.containsKey(method)){
-            return new OkHttpCall(cache.get(method), args);
-        }
+        Annotation[] declaredAnnotations = method.getDeclaredAnnotations();
+
         ServiceMethod serviceMethod = new ServiceMethod();
-        serviceMethod.parameterAnnotations = method.getParameterAnnotations();
-        serviceMethod.declaredAnnotations = method.getDeclaredAnnotations();
-        serviceMethod.baseUrl = retrofit.baseUrl.toString();
-        serviceMethod.callAdapter = retrofit.getCallAdapter(method.getGenericReturnType(), method.getDeclaredAnnotations(), retrofit);
-        if(method.getParameterAnnotations().length == 0){
-            serviceMethod.requestBodyConverter = new ToStringConverterFactory().requestBodyConverter(method.getReturnType(),
-                    null, method.getDeclaredAnnotations(), retrofit);
-        }else{
-            serviceMethod.requestBodyConverter = retrofit.searchForRequestConverter(method.getGenericReturnType(),
-                    method.getParameterAnnotations()[0], method.getDeclaredAnnotations());
+        serviceMethod.declaredAnnotations = declaredAnnotations;
+        serviceMethod.baseUrl = retrofit.baseUrl;
+        serviceMethod.callAdapter = retrofit.getCallAdapter(returnType, declaredAnnotations, retrofit);
+        if(serviceMethod.callAdapter == null){
+            throw new IllegalArgumentException("Unable to create call adapter");
         }
-        serviceMethod.responseBodyConverter = retrofit.searchForResponseConverter(method.getGenericReturnType(),
-        method.getDeclaredAnnotations());
+        Type converterType = BlockingCallAdapterFactory.isBlocking(serviceMethod.callAdapter)
+                ? blockingConverterType(returnType)
+                : converterType(returnType, responseType);
+        serviceMethod.responseBodyConverter = retrofit.searchForResponseConverter(converterType, declaredAnnotations);
 
-        if(method.getDeclaredAnnotations()[0] instanceof GET){
-            serviceMethod.method ="GET";
-        }else if(method.getDeclaredAnnotations()[0] instanceof POST){
-            serviceMethod.method ="POST";
+        String relativeUrl = "";
+        for(Annotation annotation : declaredAnnotations){
+            if(annotation instanceof GET){
+                serviceMethod.method = "GET";
+                relativeUrl = ((GET) annotation).value();
+            }else if(annotation instanceof POST){
+                serviceMethod.method = "POST";
+                relativeUrl = ((POST) annotation).value();
+            }
+        }
+        try {
+            serviceMethod.relativeUrl = UrlTemplate.parse(relativeUrl);
+            HttpUrl absolute = HttpUrl.parse(relativeUrl);
+            serviceMethod.fixedHost = absolute != null ? absolute.host() : null;
+        } catch (IllegalArgumentException e) {
+            throw methodError(method, e.getMessage());
+        }
+        serviceMethod.parameterHandlers = parseParameters(retrofit, method, serviceMethod.relativeUrl, relativeUrl);
+        for (int p = 0; p < serviceMethod.parameterHandlers.length; p++) {
+            if (serviceMethod.parameterHandlers[p] instanceof ParameterHandler.Priority) {
+                serviceMethod.priorityParameter = p;
+            } else if (serviceMethod.parameterHandlers[p] instanceof ParameterHandler.Timeout) {
+                serviceMethod.timeoutParameter = p;
+                serviceMethod.timeoutParameterUnit =
+                        ((ParameterHandler.Timeout) serviceMethod.parameterHandlers[p]).unit;
+            }
+        }
+        Timeout timeout = method.getAnnotation(Timeout.class);
+        if (timeout != null) {
+            if (timeout.value() < 0) {
+                throw methodError(method, "@Timeout must not be negative: " + timeout.value());
+            }
+            serviceMethod.timeoutNanos = timeout.unit().toNanos(timeout.value());
         }
+        serviceMethod.callTimeoutNanos = retrofit.callTimeoutNanos;
+        Priority priority = method.getAnnotation(Priority.class);
+        if (priority != null) {
+            serviceMethod.priority = priority.value();
+        }
+        serviceMethod.scheduler = retrofit.scheduler;
         serviceMethod.client = retrofit.client;
-        OkHttpCall result = new OkHttpCall(serviceMethod, args);
-//        cache.put(method, serviceMethod);
-        return result;
+        if ("GET".equals(serviceMethod.method)
+                && (retrofit.singleFlight || Utils.isAnnotationPresent(declaredAnnotations, SingleFlight.class))
+                && !Utils.isAnnotationPresent(declaredAnnotations, Streaming.class)) {
+            serviceMethod.coalescer = retrofit.coalescer;
+        }
+        Hedge hedge = method.getAnnotation(Hedge.class);
+        if (hedge != null) {
+            if (!"GET".equals(serviceMethod.method)) {
+                throw methodError(method, "@Hedge is only allowed on @GET methods.");
+            }
+            serviceMethod.hedge = new HedgingCall.Policy(hedge);
+            serviceMethod.hedgeBudget = retrofit.hedgeBudget;
+        }
+        Retry retry = method.getAnnotation(Retry.class);
+        if (retry != null) {
+            if (!"GET".equals(serviceMethod.method)) {
+                throw methodError(method, "@Retry is only allowed on @GET methods.");
+            }
+            try {
+                serviceMethod.retry = new RetryingCall.Policy(retry);
+            } catch (IllegalArgumentException e) {
+                throw methodError(method, e.getMessage());
+            }
+            serviceMethod.retryBudget = retrofit.retryBudget;
+        }
+        ConcurrencyLimit limit = method.getAnnotation(ConcurrencyLimit.class);
+        try {
+            if (limit != null) {
+                serviceMethod.limiter = new ConcurrencyLimiter(limit);
+            } else if (retrofit.adaptiveConcurrency) {
+                serviceMethod.limiter = new ConcurrencyLimiter(ConcurrencyLimiter.DEFAULT_INITIAL_LIMIT,
+                        ConcurrencyLimiter.DEFAULT_MIN_LIMIT, ConcurrencyLimiter.DEFAULT_MAX_LIMIT,
+                        ConcurrencyLimiter.DEFAULT_MAX_QUEUED);
+            }
+        } catch (IllegalArgumentException e) {
+            throw methodError(method, e.getMessage());
+        }
+        CircuitBreaker breaker = method.getAnnotation(CircuitBreaker.class);
+        if (breaker != null || retrofit.circuitBreakers) {
+            serviceMethod.circuitPerHost = breaker == null || breaker.perHost();
+            String name = serviceMethod.circuitPerHost
+                    ? serviceMethod.host(retrofit.baseUrl)
+                    : method.getDeclaringClass().getSimpleName() + "." + method.getName();
+            try {
+                Circuit template = breaker != null
+                        ? new Circuit(name, breaker, null)
+                        : new Circuit(name, Circuit.DEFAULT_FAILURE_RATE, Circuit.DEFAULT_WINDOW_SIZE,
+                        Circuit.DEFAULT_MINIMUM_CALLS, Circuit.DEFAULT_OPEN_MILLIS, Circuit.DEFAULT_PROBES, null);
+                serviceMethod.circuit = retrofit.circuitFor(template, name);
+            } catch (IllegalArgumentException e) {
+                throw methodError(method, e.getMessage());
+            }
+        }
+        RateLimit rateLimit = method.getAnnotation(RateLimit.class);
+        if (rateLimit != null) {
+            try {
+                String host = serviceMethod.host(retrofit.baseUrl);
+                serviceMethod.rateLimiter = retrofit.rateLimiterFor(new RateLimiter(host, rateLimit), host);
+            } catch (IllegalArgumentException e) {
+                throw methodError(method, e.getMessage());
+            }
+            if (rateLimit.maxWaitMillis() >= 0) {
+                serviceMethod.rateLimitWaitNanos =
+                        TimeUnit.MILLISECONDS.toNanos(rateLimit.maxWaitMillis());
+            }
+        }
+        Batch batch = method.getAnnotation(Batch.class);
+        if (batch != null) {
+            Method batchMethod = batchMethod(method, batch, responseType);
+            try {
+                serviceMethod.batcher =
+                        new Batcher<>(retrofit, batchMethod, batch.windowMillis(), batch.maxKeys());
+            } catch (IllegalArgumentException e) {
+                throw methodError(method, e.getMessage());
+            }
+        }
+        Bulkhead bulkhead = method.getAnnotation(Bulkhead.class);
+        if (bulkhead == null) {
+            bulkhead = method.getDeclaringClass().getAnnotation(Bulkhead.class);
+        }
+        if (bulkhead != null) {
+            String name = bulkhead.value().isEmpty()
+                    ? method.getDeclaringClass().getSimpleName()
+                    : bulkhead.value();
+            try {
+                serviceMethod.bulkhead = retrofit.bulkheadFor(new Compartment(name, bulkhead));
+            } catch (IllegalArgumentException e) {
+                throw methodError(method, e.getMessage());
+            }
+        }
+        return serviceMethod;
     }
 
-    okhttp3.Call toCall(Object[] args) throws IOException {
-        RequestBody requestBody = null;
-        int paramIndex = 0;
-        String relativeUrl = "";
-        for (Annotation[] parameterAnnotation : parameterAnnotations) {
-            if (parameterAnnotation.length > 0) {
-                for (Annotation annotation : parameterAnnotation) {
-                    if (annotation instanceof Body) {
-                        if (args[paramIndex] instanceof String) {
-                            requestBody = requestBodyConverter.convert((String) args[paramIndex]);
-                        } else if (args[paramIndex] instanceof RequestBody) {
-                            requestBody = (RequestBody) args[paramIndex];
-                        }
-                    } else if (annotation instanceof Path) {
-                        String pattern = "\\{" + ((Path) annotation).value() + "\\}";
-                        Pattern r = Pattern.compile(pattern);
-                        Matcher m = r.matcher(relativeUrl);
-                        relativeUrl = m.replaceAll(args[paramIndex].toString());
-                    } else if (annotation instanceof Query) {
-                        String query = ((Query) annotation).value();
-                        relativeUrl += "?" + query + "=" + args[paramIndex];
+    /**
+     * Finds the batch method {@code method} names and checks that it takes a list of the same keys
+     * and returns a call for a map from them to {@code responseType}.
+     */
+    private static Method batchMethod(Method method, Batch batch, Type responseType) {
+        Type[] parameterTypes = method.getGenericParameterTypes();
+        if (parameterTypes.length != 1) {
+            throw methodError(method, "@Batch methods must take the key as their only parameter.");
+        }
+        Type keyType = parameterTypes[0];
+        Method batchMethod = null;
+        for (Method candidate : method.getDeclaringClass().getMethods()) {
+            if (candidate.getName().equals(batch.value())) {
+                if (batchMethod != null) {
+                    throw methodError(method, "@Batch method \"" + batch.value() + "\" is overloaded.");
+                }
+                batchMethod = candidate;
+            }
+        }
+        if (batchMethod == null) {
+            throw methodError(method, "@Batch method \"" + batch.value() + "\" not found.");
+        }
+        Type[] batchParameterTypes = batchMethod.getGenericParameterTypes();
+        Type keys = batchParameterTypes.length == 1 ? batchParameterTypes[0] : null;
+        Type call = batchMethod.getGenericReturnType();
+        Type values = Utils.getRawType(call) == Call.class && call instanceof ParameterizedType
+                ? ((ParameterizedType) call).getActualTypeArguments()[0]
+                : null;
+        boolean keysMatch = keys instanceof ParameterizedType
+                && Utils.getRawType(keys).isAssignableFrom(ArrayList.class)
+                && ((ParameterizedType) keys).getActualTypeArguments()[0].equals(keyType);
+        boolean valuesMatch = values instanceof ParameterizedType
+                && Utils.getRawType(values) == Map.class
+                && ((ParameterizedType) values).getActualTypeArguments()[0].equals(keyType)
+                && ((ParameterizedType) values).getActualTypeArguments()[1].equals(responseType);
+        if (!keysMatch || !valuesMatch) {
+            throw methodError(method, "@Batch method \"" + batch.value() + "\" must take a List<"
+                    + keyType.getTypeName() + "> and return Call<Map<" + keyType.getTypeName() + ", "
+                    + responseType.getTypeName() + ">>.");
+        }
+        return batchMethod;
+    }
+
+    /** The host this method calls: its URL's own if that is a full URL, otherwise {@code baseUrl}'s. */
+    private String host(HttpUrl baseUrl) {
+        return fixedHost != null ? fixedHost : baseUrl.host();
+    }
+
+    private static ParameterHandler<?>[] parseParameters(Retrofit retrofit, Method method,
+                                                         UrlTemplate template, String relativeUrl) {
+        Type[] parameterTypes = method.getGenericParameterTypes();
+        Annotation[][] parameterAnnotations = method.getParameterAnnotations();
+        Annotation[] declaredAnnotations = method.getDeclaredAnnotations();
+        ParameterHandler<?>[] handlers = new ParameterHandler<?>[parameterTypes.length];
+        boolean[] boundSlots = new boolean[template.slotCount()];
+        boolean gotBody = false;
+        for(int p = 0; p < parameterTypes.length; p++){
+            Type type = parameterTypes[p];
+            Annotation[] annotations = parameterAnnotations[p];
+            for(Annotation annotation : annotations){
+                ParameterHandler<?> handler;
+                if(annotation instanceof Path){
+                    String name = ((Path) annotation).value();
+                    int slot = template.slot(name);
+                    if(slot == -1){
+                        throw methodError(method, "URL \"" + relativeUrl + "\" does not contain \"{" + name + "}\".");
+                    }
+                    boundSlots[slot] = true;
+                    handler = new ParameterHandler.Path<>(slot, name, retrofit.stringConverter(type, annotations),
+                            ((Path) annotation).encoded());
+                }else if(annotation instanceof Query){
+                    handler = new ParameterHandler.Query<>(((Query) annotation).value(),
+                            retrofit.stringConverter(type, annotations));
+                }else if(annotation instanceof Body){
+                    if(gotBody){
+                        throw methodError(method, "Multiple @Body method annotations found. (parameter #" + (p + 1) + ")");
+                    }
+                    gotBody = true;
+                    Converter<?, RequestBody> converter = retrofit.searchForRequestConverter(type, annotations,
+                            declaredAnnotations);
+                    if(converter == null){
+                        throw methodError(method, "Unable to create @Body converter for " + type
+                                + " (parameter #" + (p + 1) + ")");
                     }
+                    handler = new ParameterHandler.Body<>(converter);
+                }else if(annotation instanceof Priority){
+                    if(type != int.class && type != Integer.class){
+                        throw methodError(method, "@Priority parameter type must be int or Integer. (parameter #"
+                                + (p + 1) + ")");
+                    }
+                    handler = new ParameterHandler.Priority();
+                }else if(annotation instanceof Timeout){
+                    if(type != long.class && type != Long.class){
+                        throw methodError(method, "@Timeout parameter type must be long or Long. (parameter #"
+                                + (p + 1) + ")");
+                    }
+                    handler = new ParameterHandler.Timeout(((Timeout) annotation).unit());
+                }else{
+                    continue;
+                }
+                if(handlers[p] != null){
+                    throw methodError(method, "Multiple Retrofit annotations found, only one allowed. (parameter #"
+                            + (p + 1) + ")");
                 }
+                handlers[p] = handler;
+            }
+            if(handlers[p] == null){
+                throw methodError(method, "No Retrofit annotation found. (parameter #" + (p + 1) + ")");
+            }
+        }
+        for(int i = 0; i < boundSlots.length; i++){
+            if(!boundSlots[i]){
+                throw methodError(method, "URL \"" + relativeUrl + "\" has no @Path parameter for \"{"
+                        + template.name(i) + "}\".");
             }
-            paramIndex++;
+        }
+        return handlers;
+    }
+
+    private static IllegalArgumentException methodError(Method method, String message) {
+        return new IllegalArgumentException(message + "\n    for method "
+                + method.getDeclaringClass().getSimpleName() + "." + method.getName());
+    }
+
+    /**
+     * Converters are asked for the full return type, such as {@code Call<String>}. When the body is
+     * wrapped, as in {@code CompletableFuture<Response<String>>}, they are asked for
+     * {@code CompletableFuture<String>} instead, since {@link Response} is never converted.
+     */
+    private static Type converterType(Type returnType, Type responseType) {
+        if (!(responseType instanceof ParameterizedType)
+                || ((ParameterizedType) responseType).getRawType() != Response.class) {
+            return returnType;
+        }
+        ParameterizedType wrapper = (ParameterizedType) returnType;
+        return Utils.newParameterizedType((Class<?>) wrapper.getRawType(),
+                new Type[]{((ParameterizedType) responseType).getActualTypeArguments()[0]},
+                wrapper.getOwnerType());
+    }
+
+    /**
+     * Methods returning {@code T} or {@code Response<T>} directly are adapted from a
+     * {@code Call<T>}, so that is the type their converters are asked for.
+     */
+    private static Type blockingConverterType(Type returnType) {
+        Type bodyType = returnType;
+        if (returnType instanceof ParameterizedType
+                && ((ParameterizedType) returnType).getRawType() == Response.class) {
+            bodyType = ((ParameterizedType) returnType).getActualTypeArguments()[0];
+        }
+        return Utils.newParameterizedType(Call.class, new Type[]{bodyType}, null);
+    }
+
+    okhttp3.Call toCall(Object[] args) throws IOException {
+        ParameterHandler<Object>[] handlers = (ParameterHandler<Object>[]) parameterHandlers;
+        int argumentCount = args != null ? args.length : 0;
+        if(argumentCount != handlers.length){
+            throw new IllegalArgumentException("Argument count (" + argumentCount
+                    + ") doesn't match expected count (" + handlers.length + ")");
+        }
+        if (handlers.length == 0) {
+            Request request = prototype;
+            if (request == null) {
+                request = prototype = new RequestBuilder(method, baseUrl, relativeUrl).build();
+            }
+            return newCall(request);
         }
         RequestBuilder requestBuilder = new RequestBuilder(method, baseUrl, relativeUrl);
-        if(requestBody != null){
-            requestBuilder.setBody(requestBody);
-        }else if(method.equals("POST")){
-            requestBuilder.setBody(new RequestBody() {
-                @Override
-                public MediaType contentType() {
-                    return null;
-                }
+        for(int p = 0; p < argumentCount; p++){
+            handlers[p].apply(requestBuilder, args[p]);
+        }
+        return newCall(requestBuilder.build());
+    }
 
-                @Override
-                public void writeTo(BufferedSink bufferedSink) throws IOException {
+    private okhttp3.Call newCall(Request request) {
+        return coalescer != null ? coalescer.newCall(client, request) : client.newCall(request);
+    }
 
-                }
-            });
+    /**
+     * Returns true if this method already uses {@code retrofit}'s base URL, client and per-instance
+     * state, so that instance can use it as it is.
+     */
+    boolean isBoundTo(Retrofit retrofit) {
+        return baseUrl.equals(retrofit.baseUrl)
+                && client == retrofit.client
+                && (coalescer == null || coalescer == retrofit.coalescer)
+                && (hedgeBudget == null || hedgeBudget == retrofit.hedgeBudget)
+                && (retryBudget == null || retryBudget == retrofit.retryBudget)
+                && (circuit == null || circuit == retrofit.circuit(circuit.name()))
+                && (bulkhead == null || bulkhead == retrofit.bulkhead(bulkhead.name()))
+                && (batcher == null || batcher.retrofit == retrofit)
+                && (rateLimiter == null || rateLimiter == retrofit.rateLimiter(rateLimiter.host()))
+                && scheduler == retrofit.scheduler
+                && callTimeoutNanos == retrofit.callTimeoutNanos;
+    }
+
+    /**
+     * Returns a copy of this method bound to {@code retrofit}'s base URL, client and per-instance
+     * state. Everything that was parsed or resolved is shared with this instance.
+     */
+    ServiceMethod<R, T> bind(Retrofit retrofit) {
+        ServiceMethod<R, T> bound = new ServiceMethod<>();
+        bound.method = method;
+        bound.baseUrl = retrofit.baseUrl;
+        bound.relativeUrl = relativeUrl;
+        bound.fixedHost = fixedHost;
+        bound.parameterHandlers = parameterHandlers;
+        bound.responseBodyConverter = responseBodyConverter;
+        bound.declaredAnnotations = declaredAnnotations;
+        bound.callAdapter = callAdapter;
+        bound.client = retrofit.client;
+        bound.coalescer = coalescer != null ? retrofit.coalescer : null;
+        bound.hedge = hedge;
+        bound.hedgeBudget = hedge != null ? retrofit.hedgeBudget : null;
+        bound.retry = retry;
+        bound.retryBudget = retry != null ? retrofit.retryBudget : null;
+        bound.limiter = limiter != null ? limiter.copy() : null;
+        if (circuit != null) {
+            String name = circuitPerHost ? host(retrofit.baseUrl) : circuit.name();
+            bound.circuit = retrofit.circuitFor(circuit, name);
         }
-        return client.newCall(requestBuilder.build());
+        bound.circuitPerHost = circuitPerHost;
+        bound.bulkhead = bulkhead != null ? retrofit.bulkheadFor(bulkhead) : null;
+        bound.batcher = batcher != null ? batcher.copy(retrofit) : null;
+        bound.rateLimiter = rateLimiter != null ? retrofit.rateLimiterFor(rateLimiter, host(retrofit.baseUrl)) : null;
+        bound.rateLimitWaitNanos = rateLimitWaitNanos;
+        bound.scheduler = retrofit.scheduler;
+        bound.priority = priority;
+        bound.priorityParameter = priorityParameter;
+        bound.timeoutNanos = timeoutNanos;
+        bound.callTimeoutNanos = retrofit.callTimeoutNanos;
+        bound.timeoutParameter = timeoutParameter;
+        bound.timeoutParameterUnit = timeoutParameterUnit;
+        return bound;
     }
 
-    T adapt(Call<R> call) {
-        if(callAdapter == null){
-            throw new IllegalArgumentException("Unable to create call adapter");
+    /** Returns the priority of a call with {@code args}. */
+    int priority(Object[] args) {
+        if (priorityParameter != -1 && args[priorityParameter] != null) {
+            return (Integer) args[priorityParameter];
+        }
+        return priority;
+    }
+
+    /** Returns the deadline of a call with {@code args} in nanoseconds, or 0 if it has none. */
+    long timeoutNanos(Object[] args) {
+        if (timeoutParameter != -1 && args[timeoutParameter] != null) {
+            return Math.max(0, timeoutParameterUnit.toNanos((Long) args[timeoutParameter]));
+        }
+        return timeoutNanos != -1 ? timeoutNanos : callTimeoutNanos;
+    }
+
+    /**
+     * Returns how many calls of this method may currently be in flight, as adapted by its
+     * {@link ConcurrencyLimit}, or -1 if it is not limited.
+     */
+    public int concurrencyLimit() {
+        return limiter != null ? limiter.limit() : -1;
+    }
+
+    /** Creates a call for {@code args} and adapts it to the method's declared return type. */
+    public T invoke(Object[] args) {
+        return adapt(call(args));
+    }
+
+    /** Creates a call for {@code args}, wrapped as the method's annotations ask. */
+    Call<R> call(Object[] args) {
+        if (batcher != null) {
+            return new BatchedCall<>(this, args, batcher);
+        }
+        if (hedge == null && retry == null) {
+            return (Call<R>) new OkHttpCall(this, args);
         }
+        // One deadline for the whole call, armed outside every attempt rather than per attempt.
+        long timeoutNanos = timeoutNanos(args);
+        Call<R> call = (Call<R>) new OkHttpCall(this, args, false);
+        if (hedge != null) {
+            call = new HedgingCall<>(call, hedge, hedgeBudget);
+        }
+        if (retry != null) {
+            call = new RetryingCall<>(call, retry, retryBudget);
+        }
+        return timeoutNanos > 0 ? new DeadlineCall<>(call, timeoutNanos) : call;
+    }
+
+    T adapt(Call<R> call) {
         return callAdapter.adapt(call);
     }
 }
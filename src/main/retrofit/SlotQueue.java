@@ -0,0 +1,104 @@
+package main.retrofit;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+/**
+ * A number of slots for calls in flight and a queue of calls waiting for one. It is the mechanism
+ * behind every limit that holds calls back before they start; each owner supplies its own limit,
+ * which may change over time, and the failure for a call that finds the queue full. The limit is
+ * read under the queue's lock, so reading it must be cheap and must never call back into the queue.
+ */
+final class SlotQueue implements Admission.Queue {
+
+    private static final Comparator<Admission> BY_RANK = new Comparator<Admission>() {
+        @Override
+        public int compare(Admission a, Admission b) {
+            return Long.compare(a.rank, b.rank);
+        }
+    };
+
+    private final IntSupplier limit;
+    private final int maxQueued;
+    private final Supplier<? extends IOException> whenFull;
+    private final Queue<Admission> waiting;
+    private int inFlight;
+
+    private SlotQueue(IntSupplier limit, int maxQueued, Supplier<? extends IOException> whenFull,
+                      Queue<Admission> waiting) {
+        this.limit = limit;
+        this.maxQueued = maxQueued;
+        this.whenFull = whenFull;
+        this.waiting = waiting;
+    }
+
+    /** Returns a queue that admits calls first come, first served. */
+    static SlotQueue fifo(IntSupplier limit, int maxQueued, Supplier<? extends IOException> whenFull) {
+        return new SlotQueue(limit, maxQueued, whenFull, new ArrayDeque<Admission>());
+    }
+
+    /** Returns an unbounded queue that admits the waiting call of lowest {@link Admission#rank} first. */
+    static SlotQueue ranked(IntSupplier limit) {
+        return new SlotQueue(limit, Integer.MAX_VALUE, null, new PriorityQueue<>(11, BY_RANK));
+    }
+
+    synchronized int inFlight() {
+        return inFlight;
+    }
+
+    synchronized int queued() {
+        return waiting.size();
+    }
+
+    /**
+     * Returns an admission that completes once the call has a slot, or fails when the queue is full.
+     * A call that is admitted must {@link #release} once.
+     */
+    Admission acquire(long rank) {
+        Admission admission = new Admission(this, rank);
+        synchronized (this) {
+            if (inFlight < limit.getAsInt() && waiting.isEmpty()) {
+                inFlight++;
+                admission.complete(null);
+            } else if (waiting.size() < maxQueued) {
+                waiting.add(admission);
+            } else {
+                admission.completeExceptionally(whenFull.get());
+            }
+        }
+        return admission;
+    }
+
+    @Override
+    public synchronized void remove(Admission admission) {
+        waiting.remove(admission);
+    }
+
+    /** Frees an admitted call's slot, handing it and any others the limit now allows to waiting calls. */
+    void release() {
+        List<Admission> admitted = new ArrayList<>();
+        synchronized (this) {
+            inFlight--;
+            while (inFlight < limit.getAsInt() && !waiting.isEmpty()) {
+                Admission next = waiting.poll();
+                if (!next.isDone()) {
+                    inFlight++;
+                    admitted.add(next);
+                }
+            }
+        }
+        // Completed outside the lock: admitted calls start right away on this thread.
+        for (Admission next : admitted) {
+            if (!next.complete(null)) {
+                release();
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package main.retrofit;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The one daemon thread every delayed action in Retrofit is scheduled on: hedges, retries and call
+ * deadlines. It is a hashed timer wheel, so that arming and disarming a timer cost the same however
+ * many are armed. Most timers are deadlines that are disarmed long before they fire, and both
+ * operations only append to a lock-free queue; the timer thread files new timers into the bucket of
+ * the tick they are due in and unlinks disarmed ones, then runs the current bucket. Timers fire up
+ * to one {@link #TICK_NANOS tick} late, never early. When no timers are armed the thread parks.
+ */
+final class Timers {
+
+    static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    /** A power of two, so that a tick's bucket is found with a mask. */
+    private static final int WHEEL_SIZE = 512;
+
+    private static final Queue<Timeout> ARMED = new ConcurrentLinkedQueue<>();
+    private static final Queue<Timeout> DISARMED = new ConcurrentLinkedQueue<>();
+    private static final Timeout[] WHEEL = new Timeout[WHEEL_SIZE];
+    private static final long ORIGIN = System.nanoTime();
+    private static final Thread THREAD;
+    private static volatile boolean idle;
+
+    static {
+        THREAD = new Thread(Timers::run, "Retrofit timer");
+        THREAD.setDaemon(true);
+        THREAD.start();
+    }
+
+    private Timers() {
+    }
+
+    /** Runs {@code action} after {@code delayNanos}. It must be short and must not block. */
+    static Timeout schedule(Runnable action, long delayNanos) {
+        Timeout timeout = new Timeout(action, System.nanoTime() - ORIGIN + Math.max(0, delayNanos));
+        ARMED.add(timeout);
+        if (idle) {
+            LockSupport.unpark(THREAD);
+        }
+        return timeout;
+    }
+
+    /** A scheduled action. */
+    static final class Timeout {
+        private static final int PENDING = 0;
+        private static final int CANCELED = 1;
+        private static final int EXPIRED = 2;
+        private static final AtomicIntegerFieldUpdater<Timeout> STATE =
+                AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+        private final Runnable action;
+        private final long deadline;
+        private volatile int state;
+        // Only touched by the timer thread.
+        private long rounds;
+        private int bucket = -1;
+        private Timeout previous;
+        private Timeout next;
+
+        Timeout(Runnable action, long deadline) {
+            this.action = action;
+            this.deadline = deadline;
+        }
+
+        /** Stops the action from running. Returns false if it already has, or is running now. */
+        boolean cancel() {
+            if (!STATE.compareAndSet(this, PENDING, CANCELED)) {
+                return false;
+            }
+            DISARMED.add(this);
+            return true;
+        }
+    }
+
+    private static void run() {
+        long tick = 0;
+        int filed = 0;
+        while (true) {
+            long now = System.nanoTime() - ORIGIN;
+            long current = now / TICK_NANOS;
+            if (filed == 0 && ARMED.isEmpty()) {
+                idle = true;
+                if (ARMED.isEmpty()) {
+                    LockSupport.park();
+                }
+                idle = false;
+                // Nothing is filed, so there are no skipped buckets to catch up on.
+                tick = (System.nanoTime() - ORIGIN) / TICK_NANOS;
+                continue;
+            }
+            if (tick > current) {
+                LockSupport.parkNanos(tick * TICK_NANOS - now);
+                continue;
+            }
+            filed -= unlinkDisarmed();
+            filed += fileArmed(tick);
+            filed -= expire(tick);
+            tick++;
+        }
+    }
+
+    private static int unlinkDisarmed() {
+        int unlinked = 0;
+        for (Timeout timeout; (timeout = DISARMED.poll()) != null; ) {
+            if (timeout.bucket != -1) {
+                unlink(timeout);
+                unlinked++;
+            }
+        }
+        return unlinked;
+    }
+
+    private static int fileArmed(long tick) {
+        int filed = 0;
+        for (Timeout timeout; (timeout = ARMED.poll()) != null; ) {
+            if (timeout.state != Timeout.PENDING) {
+                continue;
+            }
+            // The first tick that starts at or after the deadline; overdue timers go in this one.
+            long due = Math.max(tick, (timeout.deadline + TICK_NANOS - 1) / TICK_NANOS);
+            timeout.rounds = (due - tick) / WHEEL_SIZE;
+            int bucket = (int) (due & (WHEEL_SIZE - 1));
+            timeout.bucket = bucket;
+            timeout.next = WHEEL[bucket];
+            if (timeout.next != null) {
+                timeout.next.previous = timeout;
+            }
+            WHEEL[bucket] = timeout;
+            filed++;
+            // A cancel that raced with filing is unlinked on the next tick.
+        }
+        return filed;
+    }
+
+    private static int expire(long tick) {
+        int expired = 0;
+        Timeout timeout = WHEEL[(int) (tick & (WHEEL_SIZE - 1))];
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.rounds > 0) {
+                timeout.rounds--;
+            } else {
+                unlink(timeout);
+                expired++;
+                if (Timeout.STATE.compareAndSet(timeout, Timeout.PENDING, Timeout.EXPIRED)) {
+                    try {
+                        timeout.action.run();
+                    } catch (Throwable t) {
+                        // Report it like an uncaught exception, but keep the timer thread alive.
+                        Thread thread = Thread.currentThread();
+                        thread.getUncaughtExceptionHandler().uncaughtException(thread, t);
+                    }
+                }
+            }
+            timeout = next;
+        }
+        return expired;
+    }
+
+    private static void unlink(Timeout timeout) {
+        if (timeout.previous != null) {
+            timeout.previous.next = timeout.next;
+        } else {
+            WHEEL[timeout.bucket] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.previous = timeout.previous;
+        }
+        timeout.previous = null;
+        timeout.next = null;
+        timeout.bucket = -1;
+    }
+}
@@ -4,7 +4,6 @@ import okhttp3.MediaType;
 import okhttp3.RequestBody;
 import okhttp3.ResponseBody;
 import okio.BufferedSink;
-import sun.reflect.generics.reflectiveObjects.ParameterizedTypeImpl;
 
 import java.io.IOException;
 import java.lang.annotation.Annotation;
@@ -21,8 +20,8 @@ public class ToStringConverterFactory extends Converter.Factory {
         if(!(type instanceof ParameterizedType)){
             return null;
         }
-        if(((ParameterizedTypeImpl) type).getActualTypeArguments().length > 0
-                && ((ParameterizedTypeImpl) type).getActualTypeArguments()[0].equals(String.class)){
+        if(((ParameterizedType) type).getActualTypeArguments().length > 0
+                && ((ParameterizedType) type).getActualTypeArguments()[0].equals(String.class)){
             return (Converter<ResponseBody, String>) value -> {
                 if(value == null){
                     return "";
@@ -37,11 +36,7 @@ public class ToStringConverterFactory extends Converter.Factory {
     public Converter<?, RequestBody> requestBodyConverter(Type type,
                                                           Annotation[] parameterAnnotations, Annotation[] methodAnnotations,
                                                           Retrofit retrofit) {
-        if(!(type instanceof ParameterizedType)){
-            return null;
-        }
-        if(((ParameterizedTypeImpl) type).getActualTypeArguments().length > 0
-                && ((ParameterizedTypeImpl) type).getActualTypeArguments()[0].equals(String.class)){
+        if(String.class.equals(type)){
             return (Converter<String, RequestBody>) value -> new RequestBody() {
                 @Override
                 public MediaType contentType() {
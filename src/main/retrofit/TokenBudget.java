@@ -0,0 +1,44 @@
+package main.retrofit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caps extra attempts, hedges or retries, at a fixed share of calls. Every call earns {@code ratio}
+ * of a token and every extra attempt spends a whole one, so over time they stay below {@code ratio}
+ * extra load. The budget starts with a small reserve so that a burst of slow or failed calls can be
+ * handled at once, even before any calls have been made; a ratio of zero leaves no reserve.
+ */
+final class TokenBudget {
+
+    /** Tokens are counted in thousandths so that fractional earnings need no floating point. */
+    private static final long UNIT = 1000;
+    private static final long MAX_TOKENS = 10 * UNIT;
+
+    private final long earnedPerCall;
+    private final AtomicLong balance;
+
+    TokenBudget(double ratio) {
+        this.earnedPerCall = Math.round(ratio * UNIT);
+        this.balance = new AtomicLong(earnedPerCall > 0 ? MAX_TOKENS : 0);
+    }
+
+    void recordCall() {
+        long current;
+        long next;
+        do {
+            current = balance.get();
+            next = Math.min(MAX_TOKENS, current + earnedPerCall);
+        } while (current != next && !balance.compareAndSet(current, next));
+    }
+
+    boolean tryAcquire() {
+        long current;
+        do {
+            current = balance.get();
+            if (current < UNIT) {
+                return false;
+            }
+        } while (!balance.compareAndSet(current, current - UNIT));
+        return true;
+    }
+}
@@ -0,0 +1,198 @@
+package main.retrofit;
+
+import okhttp3.HttpUrl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A relative URL such as {@code /users/{id}/repos} split once into path segments, each made of
+ * literal text and named parameter slots, plus any literal query parameters. Applying it extends a
+ * pre-parsed base {@link HttpUrl} through its builder, so the full URL is never re-parsed.
+ */
+final class UrlTemplate {
+
+    /** Distinct parameter names; a name used twice in the URL maps to a single slot. */
+    private final String[] names;
+    /** True for full or scheme-relative URLs, which are resolved against the base instead. */
+    private final boolean resolveAgainstBase;
+    private final Segment whole;
+    private final boolean absolutePath;
+    private final Segment[] segments;
+    private final String[] encodedQuery;
+
+    private UrlTemplate(String[] names, boolean resolveAgainstBase, Segment whole, boolean absolutePath,
+                        Segment[] segments, String[] encodedQuery) {
+        this.names = names;
+        this.resolveAgainstBase = resolveAgainstBase;
+        this.whole = whole;
+        this.absolutePath = absolutePath;
+        this.segments = segments;
+        this.encodedQuery = encodedQuery;
+    }
+
+    static UrlTemplate parse(String relativeUrl) {
+        List<String> names = new ArrayList<>();
+        Segment whole = Segment.parse(relativeUrl, names);
+        int queryStart = relativeUrl.indexOf('?');
+        String path = queryStart != -1 ? relativeUrl.substring(0, queryStart) : relativeUrl;
+        String query = queryStart != -1 ? relativeUrl.substring(queryStart + 1) : null;
+        if (query != null && query.indexOf('{') != -1) {
+            throw new IllegalArgumentException(
+                    "URL query string \"" + query + "\" must not have replace block.");
+        }
+        boolean resolveAgainstBase = path.startsWith("//") || path.indexOf("://") != -1;
+
+        boolean absolutePath = path.startsWith("/");
+        if (absolutePath) {
+            path = path.substring(1);
+        }
+        Segment[] segments;
+        if (path.isEmpty()) {
+            segments = new Segment[0];
+        } else {
+            String[] parts = path.split("/", -1);
+            segments = new Segment[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                segments[i] = Segment.parse(parts[i], names);
+            }
+        }
+
+        List<String> encodedQuery = new ArrayList<>();
+        if (query != null && !query.isEmpty()) {
+            for (String pair : query.split("&")) {
+                int equals = pair.indexOf('=');
+                encodedQuery.add(equals != -1 ? pair.substring(0, equals) : pair);
+                encodedQuery.add(equals != -1 ? pair.substring(equals + 1) : null);
+            }
+        }
+        return new UrlTemplate(names.toArray(new String[names.size()]), resolveAgainstBase, whole,
+                absolutePath, segments, encodedQuery.toArray(new String[encodedQuery.size()]));
+    }
+
+    /** Returns the slot bound to {@code {name}}, or -1 if the template does not contain it. */
+    int slot(String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    String name(int slot) {
+        return names[slot];
+    }
+
+    int slotCount() {
+        return names.length;
+    }
+
+    /**
+     * Builds the request URL from {@code baseUrl}, the already-encoded {@code values} for every slot,
+     * and {@code query}, alternating unencoded names and values.
+     */
+    HttpUrl resolve(HttpUrl baseUrl, String[] values, List<String> query) {
+        HttpUrl.Builder url;
+        if (resolveAgainstBase) {
+            StringBuilder relativeUrl = new StringBuilder(whole.length(values));
+            whole.appendTo(relativeUrl, values);
+            HttpUrl resolved = baseUrl.resolve(relativeUrl.toString());
+            if (resolved == null) {
+                throw new IllegalArgumentException(
+                        "Malformed URL. Base: " + baseUrl + ", Relative: " + relativeUrl);
+            }
+            url = resolved.newBuilder();
+        } else {
+            url = baseUrl.newBuilder().query(null).fragment(null);
+            if (absolutePath) {
+                url.encodedPath("/");
+            }
+            for (Segment segment : segments) {
+                url.addEncodedPathSegment(segment.expand(values));
+            }
+            for (int i = 0; i < encodedQuery.length; i += 2) {
+                url.addEncodedQueryParameter(encodedQuery[i], encodedQuery[i + 1]);
+            }
+        }
+        if (query != null) {
+            for (int i = 0, size = query.size(); i < size; i += 2) {
+                url.addQueryParameter(query.get(i), query.get(i + 1));
+            }
+        }
+        return url.build();
+    }
+
+    /** Literal text interleaved with slots: {@code literals[i]} precedes slot {@code slots[i]}. */
+    private static final class Segment {
+        private final String[] literals;
+        private final int[] slots;
+        private final int literalLength;
+
+        private Segment(String[] literals, int[] slots, int literalLength) {
+            this.literals = literals;
+            this.slots = slots;
+            this.literalLength = literalLength;
+        }
+
+        static Segment parse(String text, List<String> names) {
+            List<String> literals = new ArrayList<>();
+            List<Integer> slots = new ArrayList<>();
+            int literalLength = 0;
+            int start = 0;
+            int open;
+            while ((open = text.indexOf('{', start)) != -1) {
+                int close = text.indexOf('}', open);
+                if (close == -1) {
+                    break;
+                }
+                String literal = text.substring(start, open);
+                literals.add(literal);
+                literalLength += literal.length();
+                String name = text.substring(open + 1, close);
+                int slot = names.indexOf(name);
+                if (slot == -1) {
+                    slot = names.size();
+                    names.add(name);
+                }
+                slots.add(slot);
+                start = close + 1;
+            }
+            String trailing = text.substring(start);
+            literals.add(trailing);
+            literalLength += trailing.length();
+            int[] slotArray = new int[slots.size()];
+            for (int i = 0; i < slotArray.length; i++) {
+                slotArray[i] = slots.get(i);
+            }
+            return new Segment(literals.toArray(new String[literals.size()]), slotArray, literalLength);
+        }
+
+        String expand(String[] values) {
+            if (slots.length == 0) {
+                return literals[0];
+            }
+            if (slots.length == 1 && literalLength == 0) {
+                return values[slots[0]];
+            }
+            StringBuilder result = new StringBuilder(length(values));
+            appendTo(result, values);
+            return result.toString();
+        }
+
+        int length(String[] values) {
+            int length = literalLength;
+            for (int slot : slots) {
+                length += values[slot].length();
+            }
+            return length;
+        }
+
+        void appendTo(StringBuilder result, String[] values) {
+            for (int i = 0; i < slots.length; i++) {
+                result.append(literals[i]).append(values[slots[i]]);
+            }
+            result.append(literals[slots.length]);
+        }
+    }
+}
@@ -3,8 +3,14 @@ package main.retrofit;
 import com.sun.istack.internal.Nullable;
 import main.retrofit.okhttp.Streaming;
 
+import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.*;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Created by pc on 2018/6/23.
@@ -101,4 +107,108 @@ public class Utils {
         }
         return getParameterUpperBound(0, (ParameterizedType) returnType);
     }
+
+    /**
+     * Executes {@code call} by enqueueing it and waiting for its callback, for calls whose attempts
+     * are coordinated asynchronously. Interrupting the waiting thread cancels the call.
+     */
+    static <T> Response<T> awaitEnqueued(Call<T> call) throws IOException {
+        final CompletableFuture<Response<T>> result = new CompletableFuture<>();
+        call.enqueue(new Callback<T>() {
+            @Override
+            public void onResponse(Call<T> call, Response<T> response) {
+                result.complete(response);
+            }
+
+            @Override
+            public void onFailure(Call<T> call, Throwable t) {
+                result.completeExceptionally(t);
+            }
+        });
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            call.cancel();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /** Makes {@code rawType<typeArguments>}, equal to the JDK's own parameterized types. */
+    static ParameterizedType newParameterizedType(Class<?> rawType, Type[] typeArguments,
+                                                  @Nullable Type ownerType) {
+        return new ParameterizedTypeImpl(rawType, typeArguments.clone(), ownerType);
+    }
+
+    private static final class ParameterizedTypeImpl implements ParameterizedType {
+        private final Class<?> rawType;
+        private final Type[] typeArguments;
+        private final Type ownerType;
+
+        ParameterizedTypeImpl(Class<?> rawType, Type[] typeArguments, @Nullable Type ownerType) {
+            for (Type typeArgument : typeArguments) {
+                checkNotNull(typeArgument, "typeArgument == null");
+            }
+            this.rawType = rawType;
+            this.typeArguments = typeArguments;
+            this.ownerType = ownerType != null ? ownerType : rawType.getDeclaringClass();
+        }
+
+        @Override
+        public Type[] getActualTypeArguments() {
+            return typeArguments.clone();
+        }
+
+        @Override
+        public Type getRawType() {
+            return rawType;
+        }
+
+        @Override
+        public Type getOwnerType() {
+            return ownerType;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof ParameterizedType)) {
+                return false;
+            }
+            ParameterizedType that = (ParameterizedType) other;
+            return rawType.equals(that.getRawType())
+                    && Objects.equals(ownerType, that.getOwnerType())
+                    && Arrays.equals(typeArguments, that.getActualTypeArguments());
+        }
+
+        /** The same hash as the JDK's implementation, so the two mix in hashed collections. */
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(typeArguments) ^ Objects.hashCode(ownerType) ^ rawType.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder result = new StringBuilder(rawType.getName());
+            if (typeArguments.length > 0) {
+                result.append('<');
+                for (int i = 0; i < typeArguments.length; i++) {
+                    result.append(i > 0 ? ", " : "").append(typeArguments[i].getTypeName());
+                }
+                result.append('>');
+            }
+            return result.toString();
+        }
+    }
 }
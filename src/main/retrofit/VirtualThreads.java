@@ -0,0 +1,66 @@
+package main.retrofit;
+
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The thread-per-call executor behind {@link Retrofit.Builder#virtualThreads}. On a runtime with
+ * virtual threads it is {@code Executors.newVirtualThreadPerTaskExecutor()}, looked up reflectively
+ * since this code targets Java 8. On Java 8 itself there are none, and the fallback is an unbounded
+ * pool of daemon threads: much the same as OkHttp's default executor, so the mode gains nothing.
+ */
+final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    static ExecutorService executor() {
+        return Holder.EXECUTOR;
+    }
+
+    /**
+     * Returns {@code client} with its asynchronous calls dispatched on {@link #executor()}. The
+     * request limits of the existing dispatcher are copied, but the copy is a new dispatcher, so
+     * this is only for the client Retrofit creates itself; see {@link Retrofit.Builder#virtualThreads}.
+     */
+    static OkHttpClient dispatchOn(OkHttpClient client) {
+        Dispatcher current = client.dispatcher();
+        if (current.executorService() == executor()) {
+            return client;
+        }
+        Dispatcher dispatcher = new Dispatcher(executor());
+        dispatcher.setMaxRequests(current.getMaxRequests());
+        dispatcher.setMaxRequestsPerHost(current.getMaxRequestsPerHost());
+        return client.newBuilder().dispatcher(dispatcher).build();
+    }
+
+    private static final class Holder {
+        static final ExecutorService EXECUTOR;
+
+        static {
+            ExecutorService executor;
+            try {
+                Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                executor = (ExecutorService) factory.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                executor = Executors.newCachedThreadPool(new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "Retrofit call " + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            }
+            EXECUTOR = executor;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package main.retrofit.okhttp;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Collects calls of a method that looks up one key, such as {@code @GET("users/{id}")}, and sends
+ * their keys together through the batch method named by {@link #value()}. Calls made within
+ * {@link #windowMillis()} of the first share one request, which is sent early once
+ * {@link #maxKeys()} distinct keys are collected; calls for the same key share its result.
+ *
+ * <p>The annotated method takes the key as its only parameter. The batch method, in the same
+ * interface, takes a {@code List} of keys as its only parameter and returns
+ * {@code Call<Map<K, V>>}, where {@code V} is the annotated method's response type. Each call gets
+ * its key's value with the batch's response, or a 404 if the map has none. A batch that fails or
+ * gets an error response delivers that to every call in it.
+ */
+@Documented
+@Target(METHOD)
+@Retention(RUNTIME)
+public @interface Batch {
+  /** The name of the batch method. */
+  String value();
+
+  long windowMillis() default 10;
+
+  int maxKeys() default 100;
+}
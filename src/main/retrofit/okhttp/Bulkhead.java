@@ -0,0 +1,33 @@
+package main.retrofit.okhttp;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Gives a group of methods their own calls in flight, so that a slow server behind one group
+ * cannot take up all of the client's {@link okhttp3.Dispatcher} and hold up the others. Calls past
+ * {@link #maxConcurrent()} wait in a queue, and calls past a full queue fail at once with
+ * {@link main.retrofit.LimitExceededException}.
+ *
+ * <p>On a service interface it applies to all of its methods; on a method it overrides the
+ * interface's. Methods with the same {@link #value() name}, from any interface of the same
+ * {@code Retrofit}, share one {@link main.retrofit.Compartment compartment}, created from the
+ * settings of whichever is used first.
+ */
+@Documented
+@Target({TYPE, METHOD})
+@Retention(RUNTIME)
+public @interface Bulkhead {
+  /** The group's name; by default, the simple name of the service interface. */
+  String value() default "";
+
+  int maxConcurrent() default 10;
+
+  /** Calls that may wait for a slot before further calls are rejected. */
+  int maxQueued() default 0;
+}
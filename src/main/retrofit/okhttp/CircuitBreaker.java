@@ -0,0 +1,39 @@
+package main.retrofit.okhttp;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Stops calling a server that keeps failing. Once {@link #failureRate()} of the last
+ * {@link #windowSize()} calls failed with an I/O error or a 5xx response, the circuit opens and
+ * calls fail at once with {@link main.retrofit.CircuitOpenException}, without touching the network.
+ * After {@link #openMillis()} a few probe calls are let through; if they all succeed the circuit
+ * closes again, and if one fails it opens for another period.
+ */
+@Documented
+@Target(METHOD)
+@Retention(RUNTIME)
+public @interface CircuitBreaker {
+  /**
+   * Share the circuit with every other method calling the same host, rather than keeping one for
+   * this method alone. The first method to create a host's circuit decides its settings.
+   */
+  boolean perHost() default false;
+
+  double failureRate() default 0.5;
+
+  /** The number of most recent calls the failure rate is measured over. */
+  int windowSize() default 20;
+
+  /** Calls needed in the window before the failure rate is acted on. */
+  int minimumCalls() default 10;
+
+  long openMillis() default 30_000;
+
+  /** Calls let through while half open, all of which must succeed to close the circuit. */
+  int probes() default 3;
+}
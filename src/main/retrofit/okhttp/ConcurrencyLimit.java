@@ -0,0 +1,28 @@
+package main.retrofit.okhttp;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Caps this method's calls in flight with a limit that adapts to the server: it grows while calls
+ * succeed at a steady latency and shrinks when calls fail, are throttled, or slow down. Calls past
+ * the limit wait in a queue, and calls past a full queue fail with
+ * {@link main.retrofit.LimitExceededException}.
+ */
+@Documented
+@Target(METHOD)
+@Retention(RUNTIME)
+public @interface ConcurrencyLimit {
+  int initialLimit() default 20;
+
+  int minLimit() default 1;
+
+  int maxLimit() default 200;
+
+  /** Calls that may wait for the limit before further calls are rejected. */
+  int maxQueued() default 100;
+}
@@ -0,0 +1,27 @@
+package main.retrofit.okhttp;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Races a second attempt of a {@code @GET} call when the first has not responded in time. The
+ * first successful response wins and the other attempt is cancelled. Hedges are drawn from the
+ * {@code Retrofit}'s hedge budget, so they never add more than a fixed share of extra load.
+ */
+@Documented
+@Target(METHOD)
+@Retention(RUNTIME)
+public @interface Hedge {
+  /**
+   * Milliseconds to wait for the first attempt before hedging. When negative, the delay is instead
+   * the {@link #percentile()} of the method's recently observed latencies.
+   */
+  long delayMillis() default -1;
+
+  /** With no fixed delay, hedge attempts slower than this fraction of recent calls. */
+  double percentile() default 0.95;
+}
@@ -0,0 +1,28 @@
+package main.retrofit.okhttp;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.ElementType.PARAMETER;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * How urgently asynchronous calls are started when {@code Retrofit.Builder.priorityScheduling} is
+ * on; higher goes first. On a method it sets the priority of every call. On an {@code int} or
+ * {@code Integer} parameter it sets each call's priority from the argument, falling back to the
+ * method's when null.
+ *
+ * <p>Every level counts as 100 milliseconds of waiting, so a call that has waited long enough is
+ * started ahead of newer calls of higher priority, and none are starved.
+ */
+@Documented
+@Target({METHOD, PARAMETER})
+@Retention(RUNTIME)
+public @interface Priority {
+  /** The priority of calls that have none. */
+  int NORMAL = 0;
+
+  int value() default NORMAL;
+}
@@ -0,0 +1,30 @@
+package main.retrofit.okhttp;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Paces this method's calls to stay under a server's request rate. Calls to one host share one
+ * token bucket, created from the settings of whichever {@code @RateLimit} method calling it is
+ * used first. A call without a token waits for one: asynchronous calls on the timer thread, holding
+ * no dispatcher thread, and synchronous calls on the calling thread.
+ */
+@Documented
+@Target(METHOD)
+@Retention(RUNTIME)
+public @interface RateLimit {
+  double permitsPerSecond();
+
+  /** Calls that may go at once after the host has been idle. */
+  int burst() default 1;
+
+  /**
+   * The longest a call may wait for its token. A call that would wait longer fails at once with
+   * {@link main.retrofit.LimitExceededException}; -1 means it waits as long as needed.
+   */
+  long maxWaitMillis() default -1;
+}
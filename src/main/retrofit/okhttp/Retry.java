@@ -0,0 +1,32 @@
+package main.retrofit.okhttp;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Retries a failed {@code @GET} call, after an I/O failure or one of {@link #statusCodes()}. Each
+ * retry waits a randomized, growing delay ("decorrelated jitter") on a shared timer rather than a
+ * sleeping thread. Retries are drawn from the {@code Retrofit}'s retry budget, so an outage is not
+ * amplified by every client retrying every call. Calls that fail fast on an open
+ * {@link CircuitBreaker circuit} are not retried.
+ */
+@Documented
+@Target(METHOD)
+@Retention(RUNTIME)
+public @interface Retry {
+  /** Attempts in total, including the first. */
+  int maxAttempts() default 3;
+
+  /** The shortest delay before a retry. */
+  long baseDelayMillis() default 100;
+
+  /** The longest delay before a retry. */
+  long maxDelayMillis() default 10_000;
+
+  /** Response codes that are retried. */
+  int[] statusCodes() default {502, 503, 504};
+}
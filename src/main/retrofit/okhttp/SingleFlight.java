@@ -0,0 +1,19 @@
+package main.retrofit.okhttp;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Coalesces concurrent calls of a {@code @GET} method that build the same request into one
+ * network call, whose buffered response is handed to every caller. Ignored on other methods and
+ * on {@link Streaming} methods, whose bodies cannot be shared.
+ */
+@Documented
+@Target(METHOD)
+@Retention(RUNTIME)
+public @interface SingleFlight {
+}
@@ -0,0 +1,32 @@
+package main.retrofit.okhttp;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.ElementType.PARAMETER;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * A deadline for each call, from when it is executed or enqueued until its response is parsed. A
+ * call still running when it passes is canceled and fails with an
+ * {@link java.io.InterruptedIOException} whose message is {@code "timeout"}; time spent waiting for
+ * a limiter or a scheduler counts too. With {@link Retry} or {@link Hedge} it bounds all attempts
+ * together, including the backoff between them, and no attempt starts once it has passed.
+ *
+ * <p>On a method it sets the deadline of every call, overriding
+ * {@code Retrofit.Builder.callTimeout}; zero means none. On a {@code long} or {@code Long}
+ * parameter it sets each call's deadline from the argument, in {@link #unit()}, falling back to the
+ * method's when null.
+ */
+@Documented
+@Target({METHOD, PARAMETER})
+@Retention(RUNTIME)
+public @interface Timeout {
+  /** Ignored on parameters, which take it from the argument. */
+  long value() default 0;
+
+  TimeUnit unit() default TimeUnit.MILLISECONDS;
+}
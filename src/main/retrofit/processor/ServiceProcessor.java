@@ -0,0 +1,197 @@
+package main.retrofit.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.TypeParameterElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Generates an implementation of every service interface that declares {@code @GET} or
+ * {@code @POST} methods. {@link main.retrofit.Retrofit#create} instantiates the generated class
+ * instead of a {@link java.lang.reflect.Proxy}, so calls are plain virtual dispatch: each generated
+ * method looks its {@link main.retrofit.ServiceMethod} up once and then hands its arguments
+ * straight to it.
+ *
+ * <p>For {@code test.Outer.Service} the generated class is {@code test.Outer_Service_RetrofitImpl}.
+ * Interfaces that cannot be implemented from their own package (private, generic or extending
+ * other interfaces) are skipped and keep using the proxy.
+ *
+ * <p>The processor is not registered as a service, since it ships in the same source root as the
+ * code it would process; enable it with {@code javac -processor
+ * main.retrofit.processor.ServiceProcessor}.
+ */
+@SupportedAnnotationTypes({"main.retrofit.okhttp.GET", "main.retrofit.okhttp.POST"})
+public final class ServiceProcessor extends AbstractProcessor {
+
+    public static final String IMPL_SUFFIX = "_RetrofitImpl";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Set<TypeElement> services = new LinkedHashSet<>();
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                Element enclosing = element.getEnclosingElement();
+                if (enclosing.getKind() == ElementKind.INTERFACE) {
+                    services.add((TypeElement) enclosing);
+                }
+            }
+        }
+        for (TypeElement service : services) {
+            if (!canImplement(service)) {
+                continue;
+            }
+            try {
+                write(service);
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "Unable to generate implementation: " + e.getMessage(), service);
+            }
+        }
+        return false;
+    }
+
+    private static boolean canImplement(TypeElement service) {
+        if (!service.getInterfaces().isEmpty() || !service.getTypeParameters().isEmpty()) {
+            return false;
+        }
+        for (Element element = service; element instanceof TypeElement; element = element.getEnclosingElement()) {
+            if (element.getModifiers().contains(Modifier.PRIVATE)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** {@code Outer_Inner}, matching {@code Class.getName()} with {@code $} replaced by {@code _}. */
+    private static String flatName(TypeElement service) {
+        StringBuilder name = new StringBuilder(service.getSimpleName());
+        Element element = service;
+        while (((TypeElement) element).getNestingKind() == NestingKind.MEMBER) {
+            element = element.getEnclosingElement();
+            name.insert(0, '_').insert(0, element.getSimpleName());
+        }
+        return name.toString();
+    }
+
+    private void write(TypeElement service) throws IOException {
+        String packageName = processingEnv.getElementUtils().getPackageOf(service).getQualifiedName().toString();
+        String implName = flatName(service) + IMPL_SUFFIX;
+        String serviceName = service.getQualifiedName().toString();
+        List<ExecutableElement> methods = new ArrayList<>();
+        for (ExecutableElement method : ElementFilter.methodsIn(service.getEnclosedElements())) {
+            if (method.getModifiers().contains(Modifier.ABSTRACT)) {
+                methods.add(method);
+            }
+        }
+
+        StringBuilder source = new StringBuilder();
+        source.append("// Generated by ").append(ServiceProcessor.class.getName()).append(". Do not edit.\n");
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("@SuppressWarnings(\"unchecked\")\n")
+                .append("public final class ").append(implName).append(" implements ").append(serviceName).append(" {\n")
+                .append("  private final main.retrofit.Retrofit retrofit;\n");
+        for (int i = 0; i < methods.size(); i++) {
+            source.append("  private volatile main.retrofit.ServiceMethod<?, ?> method").append(i).append(";\n");
+        }
+        source.append("\n  public ").append(implName).append("(main.retrofit.Retrofit retrofit) {\n")
+                .append("    this.retrofit = retrofit;\n")
+                .append("  }\n");
+        for (int i = 0; i < methods.size(); i++) {
+            writeMethod(source, serviceName, methods.get(i), "method" + i);
+        }
+        source.append("}\n");
+
+        String qualifiedName = packageName.isEmpty() ? implName : packageName + "." + implName;
+        try (Writer writer = processingEnv.getFiler().createSourceFile(qualifiedName, service).openWriter()) {
+            writer.write(source.toString());
+        }
+    }
+
+    private void writeMethod(StringBuilder source, String serviceName, ExecutableElement method, String field) {
+        Types types = processingEnv.getTypeUtils();
+        source.append("\n  @Override\n  public ");
+        List<? extends TypeParameterElement> typeParameters = method.getTypeParameters();
+        if (!typeParameters.isEmpty()) {
+            source.append('<');
+            for (int i = 0; i < typeParameters.size(); i++) {
+                TypeParameterElement typeParameter = typeParameters.get(i);
+                source.append(i > 0 ? ", " : "").append(typeParameter.getSimpleName());
+                List<? extends TypeMirror> bounds = typeParameter.getBounds();
+                for (int b = 0; b < bounds.size(); b++) {
+                    String bound = bounds.get(b).toString();
+                    if (bounds.size() == 1 && bound.equals("java.lang.Object")) {
+                        break;
+                    }
+                    source.append(b == 0 ? " extends " : " & ").append(bound);
+                }
+            }
+            source.append("> ");
+        }
+        TypeMirror returnType = method.getReturnType();
+        source.append(returnType).append(' ').append(method.getSimpleName()).append('(');
+        List<? extends VariableElement> parameters = method.getParameters();
+        for (int i = 0; i < parameters.size(); i++) {
+            source.append(i > 0 ? ", " : "").append(parameters.get(i).asType()).append(" p").append(i);
+        }
+        source.append(')');
+        List<? extends TypeMirror> thrownTypes = method.getThrownTypes();
+        for (int i = 0; i < thrownTypes.size(); i++) {
+            source.append(i == 0 ? " throws " : ", ").append(thrownTypes.get(i));
+        }
+        source.append(" {\n")
+                .append("    main.retrofit.ServiceMethod<?, ?> serviceMethod = ").append(field).append(";\n")
+                .append("    if (serviceMethod == null) {\n")
+                .append("      serviceMethod = ").append(field).append(" = retrofit.serviceMethod(")
+                .append(serviceName).append(".class, \"").append(method.getSimpleName()).append('"');
+        for (VariableElement parameter : parameters) {
+            source.append(", ").append(types.erasure(parameter.asType())).append(".class");
+        }
+        source.append(");\n    }\n    ");
+
+        String args;
+        if (parameters.isEmpty()) {
+            args = "null";
+        } else {
+            StringBuilder array = new StringBuilder("new Object[] {");
+            for (int i = 0; i < parameters.size(); i++) {
+                array.append(i > 0 ? ", " : "").append('p').append(i);
+            }
+            args = array.append('}').toString();
+        }
+        if (returnType.getKind() == TypeKind.VOID) {
+            source.append("serviceMethod.invoke(").append(args).append(");\n");
+        } else {
+            TypeMirror castType = returnType.getKind().isPrimitive()
+                    ? types.boxedClass(types.getPrimitiveType(returnType.getKind())).asType()
+                    : returnType;
+            source.append("return (").append(castType).append(") serviceMethod.invoke(").append(args).append(");\n");
+        }
+        source.append("  }\n");
+    }
+}
@@ -0,0 +1,245 @@
+package test;
+
+import main.retrofit.Call;
+import main.retrofit.Callback;
+import main.retrofit.Converter;
+import main.retrofit.Response;
+import main.retrofit.Retrofit;
+import main.retrofit.ToStringConverterFactory;
+import main.retrofit.okhttp.Batch;
+import main.retrofit.okhttp.GET;
+import main.retrofit.okhttp.Path;
+import main.retrofit.okhttp.Query;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.net.URLDecoder;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public final class BatchTest {
+    @Rule
+    public final MockWebServer server = new MockWebServer();
+
+    private final BlockingQueue<String> batches = new LinkedBlockingQueue<>();
+    private final BlockingQueue<Object> outcomes = new LinkedBlockingQueue<>();
+    private Service service;
+
+    interface Service {
+        @GET("/users/{id}")
+        @Batch(value = "users", windowMillis = 100)
+        Call<String> user(@Path("id") String id);
+
+        @GET("/users/{id}")
+        @Batch(value = "users", windowMillis = 10_000, maxKeys = 2)
+        Call<String> userInPairs(@Path("id") String id);
+
+        @GET("/users")
+        Call<Map<String, String>> users(@Query("ids") List<String> ids);
+
+        @GET("/users/{id}")
+        @Batch("missing")
+        Call<String> noBatchMethod(@Path("id") String id);
+
+        @GET("/users/{id}")
+        @Batch("counts")
+        Call<String> mismatched(@Path("id") String id);
+
+        @GET("/counts")
+        Call<Map<String, Integer>> counts(@Query("ids") List<String> ids);
+    }
+
+    /** Reads {@code key=value} lines into a map, and writes lists as comma-separated values. */
+    static final class MapConverterFactory extends Converter.Factory {
+        @Override
+        public Converter<ResponseBody, ?> responseBodyConverter(Type type, Annotation[] annotations,
+                                                                Retrofit retrofit) {
+            if (!(type instanceof ParameterizedType)) {
+                return null;
+            }
+            Type body = ((ParameterizedType) type).getActualTypeArguments()[0];
+            if (!(body instanceof ParameterizedType) || ((ParameterizedType) body).getRawType() != Map.class) {
+                return null;
+            }
+            return (Converter<ResponseBody, Map<String, String>>) value -> {
+                Map<String, String> map = new LinkedHashMap<>();
+                for (String line : value.string().split("\n")) {
+                    if (!line.isEmpty()) {
+                        String[] entry = line.split("=", 2);
+                        map.put(entry[0], entry[1]);
+                    }
+                }
+                return map;
+            };
+        }
+
+        @Override
+        public Converter<?, String> stringConverter(Type type, Annotation[] annotations, Retrofit retrofit) {
+            if (!(type instanceof ParameterizedType) || ((ParameterizedType) type).getRawType() != List.class) {
+                return null;
+            }
+            return (Converter<List<?>, String>) value -> {
+                StringBuilder joined = new StringBuilder();
+                for (Object item : value) {
+                    joined.append(joined.length() > 0 ? "," : "").append(item);
+                }
+                return joined.toString();
+            };
+        }
+    }
+
+    @Before
+    public void setUp() {
+        // Answers a batch with each id upper-cased, leaving out "ghost"; a batch with "boom" fails.
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                String path = request.getPath();
+                String query = path.substring(path.indexOf("ids=") + "ids=".length());
+                String ids;
+                try {
+                    ids = URLDecoder.decode(query, "UTF-8");
+                } catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+                batches.add(ids);
+                if (ids.contains("boom")) {
+                    return new MockResponse().setResponseCode(500).setBody("nope");
+                }
+                StringBuilder body = new StringBuilder();
+                for (String id : ids.split(",")) {
+                    if (!id.equals("ghost")) {
+                        body.append(id).append('=').append(id.toUpperCase()).append('\n');
+                    }
+                }
+                return new MockResponse().setBody(body.toString());
+            }
+        });
+        service = new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .addConverterFactory(new MapConverterFactory())
+                .addConverterFactory(new ToStringConverterFactory())
+                .build()
+                .create(Service.class);
+    }
+
+    private void enqueue(Call<String> call) {
+        call.enqueue(new Callback<String>() {
+            @Override
+            public void onResponse(Call<String> call, Response<String> response) {
+                outcomes.add(response.isSuccessful()
+                        ? response.body()
+                        : response.code() + " " + readErrorBody(response));
+            }
+
+            @Override
+            public void onFailure(Call<String> call, Throwable t) {
+                outcomes.add(t);
+            }
+        });
+    }
+
+    private static String readErrorBody(Response<String> response) {
+        try {
+            return response.errorBody().string();
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    @Test
+    public void callsInWindowShareOneRequest() throws Exception {
+        enqueue(service.user("a"));
+        enqueue(service.user("b"));
+        enqueue(service.user("a"));
+
+        assertThat(batches.poll(5, SECONDS)).isEqualTo("a,b");
+        Object[] delivered = {outcomes.poll(5, SECONDS), outcomes.poll(5, SECONDS), outcomes.poll(5, SECONDS)};
+        assertThat(delivered).containsOnly("A", "B");
+        assertThat(server.getRequestCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void executeWaitsForBatch() throws IOException {
+        assertThat(service.user("c").execute().body()).isEqualTo("C");
+    }
+
+    @Test
+    public void fullBatchIsSentWithoutWaiting() throws Exception {
+        enqueue(service.userInPairs("a"));
+        enqueue(service.userInPairs("b"));
+
+        // Well before the ten second window would close.
+        assertThat(batches.poll(2, SECONDS)).isEqualTo("a,b");
+        assertThat(outcomes.poll(2, SECONDS)).isNotNull();
+        assertThat(outcomes.poll(2, SECONDS)).isNotNull();
+    }
+
+    @Test
+    public void missingKeyIsNotFound() throws IOException {
+        Response<String> response = service.user("ghost").execute();
+        assertThat(response.code()).isEqualTo(404);
+        assertThat(response.body()).isNull();
+    }
+
+    @Test
+    public void batchErrorReachesEveryCall() throws Exception {
+        enqueue(service.user("boom"));
+        enqueue(service.user("a"));
+
+        assertThat(outcomes.poll(5, SECONDS)).isEqualTo("500 nope");
+        assertThat(outcomes.poll(5, SECONDS)).isEqualTo("500 nope");
+    }
+
+    @Test
+    public void canceledCallLeavesBatch() throws Exception {
+        Call<String> canceled = service.user("x");
+        enqueue(canceled);
+        enqueue(service.user("a"));
+        canceled.cancel();
+
+        assertThat(outcomes.poll(5, SECONDS)).isInstanceOf(IOException.class);
+        assertThat(outcomes.poll(5, SECONDS)).isEqualTo("A");
+        assertThat(batches.poll(5, SECONDS)).isEqualTo("a");
+    }
+
+    @Test
+    public void batchMethodMustExist() {
+        try {
+            service.noBatchMethod("a");
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat(e).hasMessage("@Batch method \"missing\" not found.\n"
+                    + "    for method Service.noBatchMethod");
+        }
+    }
+
+    @Test
+    public void batchMethodTypesMustMatch() {
+        try {
+            service.mismatched("a");
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat(e).hasMessage("@Batch method \"counts\" must take a List<java.lang.String> and return "
+                    + "Call<Map<java.lang.String, java.lang.String>>.\n"
+                    + "    for method Service.mismatched");
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package test;
+
+import main.retrofit.Call;
+import main.retrofit.Callback;
+import main.retrofit.Compartment;
+import main.retrofit.LimitExceededException;
+import main.retrofit.Response;
+import main.retrofit.Retrofit;
+import main.retrofit.ToStringConverterFactory;
+import main.retrofit.okhttp.Bulkhead;
+import main.retrofit.okhttp.GET;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public final class BulkheadTest {
+    @Rule
+    public final MockWebServer server = new MockWebServer();
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final BlockingQueue<Object> outcomes = new LinkedBlockingQueue<>();
+    private Retrofit retrofit;
+
+    @Bulkhead(maxConcurrent = 1)
+    interface Slow {
+        @GET("/slow")
+        Call<String> get();
+
+        @GET("/slow")
+        @Bulkhead(value = "reports", maxConcurrent = 1, maxQueued = 1)
+        Call<String> report();
+    }
+
+    interface Reports {
+        @GET("/slow")
+        @Bulkhead("reports")
+        Call<String> report();
+    }
+
+    interface Fast {
+        @GET("/fast")
+        Call<String> get();
+    }
+
+    interface Invalid {
+        @GET("/")
+        @Bulkhead(maxConcurrent = 0)
+        Call<String> get();
+    }
+
+    @Before
+    public void setUp() {
+        // Requests for /slow are held until released.
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (request.getPath().startsWith("/slow")) {
+                    release.await(10, SECONDS);
+                }
+                return new MockResponse().setBody(request.getPath());
+            }
+        });
+        retrofit = new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .addConverterFactory(new ToStringConverterFactory())
+                .build();
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+    }
+
+    private void enqueue(Call<String> call) {
+        call.enqueue(new Callback<String>() {
+            @Override
+            public void onResponse(Call<String> call, Response<String> response) {
+                outcomes.add(response.body());
+            }
+
+            @Override
+            public void onFailure(Call<String> call, Throwable t) {
+                outcomes.add(t);
+            }
+        });
+    }
+
+    private static void awaitInFlight(Compartment compartment, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + SECONDS.toNanos(5);
+        while (compartment.inFlight() != expected && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(compartment.inFlight()).isEqualTo(expected);
+    }
+
+    @Test
+    public void fullBulkheadRejectsAtOnce() throws Exception {
+        Slow slow = retrofit.create(Slow.class);
+        enqueue(slow.get());
+        awaitInFlight(retrofit.bulkhead("Slow"), 1);
+
+        try {
+            slow.get().execute();
+            fail();
+        } catch (LimitExceededException e) {
+            assertThat(e).hasMessage("Bulkhead Slow is full.");
+        }
+        release.countDown();
+        assertThat(outcomes.poll(5, SECONDS)).isEqualTo("/slow");
+        awaitInFlight(retrofit.bulkhead("Slow"), 0);
+    }
+
+    @Test
+    public void otherServicesAreNotHeldUp() throws Exception {
+        Slow slow = retrofit.create(Slow.class);
+        enqueue(slow.get());
+        awaitInFlight(retrofit.bulkhead("Slow"), 1);
+
+        assertThat(retrofit.create(Fast.class).get().execute().body()).isEqualTo("/fast");
+        assertThat(retrofit.bulkhead("Fast")).isNull();
+    }
+
+    @Test
+    public void queuedCallsWaitForASlot() throws Exception {
+        Slow slow = retrofit.create(Slow.class);
+        enqueue(slow.report());
+        Compartment reports = retrofit.bulkhead("reports");
+        awaitInFlight(reports, 1);
+        enqueue(slow.report());
+        assertThat(reports.queued()).isEqualTo(1);
+
+        release.countDown();
+        assertThat(outcomes.poll(5, SECONDS)).isEqualTo("/slow");
+        assertThat(outcomes.poll(5, SECONDS)).isEqualTo("/slow");
+        awaitInFlight(reports, 0);
+        assertThat(reports.queued()).isEqualTo(0);
+    }
+
+    @Test
+    public void namedGroupIsSharedAcrossServices() throws Exception {
+        enqueue(retrofit.create(Slow.class).report());
+        Compartment reports = retrofit.bulkhead("reports");
+        awaitInFlight(reports, 1);
+        enqueue(retrofit.create(Reports.class).report());
+        assertThat(reports.queued()).isEqualTo(1);
+
+        // The first method used set the group's size.
+        assertThat(reports.maxConcurrent()).isEqualTo(1);
+        assertThat(retrofit.bulkheads()).containsOnly(reports);
+    }
+
+    @Test
+    public void canceledCallLeavesQueue() throws Exception {
+        Slow slow = retrofit.create(Slow.class);
+        enqueue(slow.report());
+        Compartment reports = retrofit.bulkhead("reports");
+        awaitInFlight(reports, 1);
+        Call<String> queued = slow.report();
+        enqueue(queued);
+        assertThat(reports.queued()).isEqualTo(1);
+
+        queued.cancel();
+        assertThat(reports.queued()).isEqualTo(0);
+        assertThat(outcomes.poll(5, SECONDS)).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    public void invalidSettingsFailParsing() {
+        try {
+            retrofit.create(Invalid.class).get();
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat(e).hasMessage("@Bulkhead maxConcurrent must be at least 1.\n"
+                    + "    for method Invalid.get");
+        }
+    }
+}
@@ -650,6 +650,83 @@ public final class CallTest {
         assertThat(failureRef.get()).hasMessage("Canceled");
     }
 
+    @Test
+    public void concurrentExecuteRunsExactlyOnce() throws Exception {
+        Retrofit retrofit = new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .addConverterFactory(new ToStringConverterFactory())
+                .build();
+        Service service = retrofit.create(Service.class);
+        server.enqueue(new MockResponse().setBody("Hi"));
+
+        final Call<String> call = service.getString();
+        final int threads = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(threads);
+        final AtomicInteger executed = new AtomicInteger();
+        final AtomicInteger rejected = new AtomicInteger();
+        for (int i = 0; i < threads; i++) {
+            new Thread(new Runnable() {
+                @Override public void run() {
+                    try {
+                        start.await();
+                        call.execute();
+                        executed.incrementAndGet();
+                    } catch (IllegalStateException e) {
+                        rejected.incrementAndGet();
+                    } catch (Exception ignored) {
+                    } finally {
+                        finished.countDown();
+                    }
+                }
+            }).start();
+        }
+        start.countDown();
+        assertTrue(finished.await(10, SECONDS));
+        assertThat(executed.get()).isEqualTo(1);
+        assertThat(rejected.get()).isEqualTo(threads - 1);
+        assertThat(server.getRequestCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void cancelRacingEnqueueAlwaysFails() throws Exception {
+        // OkHttp can miss a cancel that lands while it is still connecting; the read timeout then
+        // fails the call instead of leaving it waiting for a response that never comes.
+        OkHttpClient client = new OkHttpClient.Builder()
+                .readTimeout(1, SECONDS)
+                .build();
+        Retrofit retrofit = new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .client(client)
+                .addConverterFactory(new ToStringConverterFactory())
+                .build();
+        Service service = retrofit.create(Service.class);
+
+        for (int i = 0; i < 50; i++) {
+            server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+            final Call<String> call = service.getString();
+            final CountDownLatch latch = new CountDownLatch(1);
+            Thread canceler = new Thread(new Runnable() {
+                @Override public void run() {
+                    call.cancel();
+                }
+            });
+            canceler.start();
+            call.enqueue(new Callback<String>() {
+                @Override public void onResponse(Call<String> call, Response<String> response) {
+                    throw new AssertionError();
+                }
+
+                @Override public void onFailure(Call<String> call, Throwable t) {
+                    latch.countDown();
+                }
+            });
+            canceler.join();
+            assertThat(call.isCanceled()).isTrue();
+            assertTrue(latch.await(10, SECONDS));
+        }
+    }
+
     @Test
     public void cloningExecutedRequestDoesNotCopyState() throws IOException {
         Retrofit retrofit = new Retrofit.Builder()
@@ -0,0 +1,196 @@
+package test;
+
+import main.retrofit.Call;
+import main.retrofit.Calls;
+import main.retrofit.Retrofit;
+import main.retrofit.ToStringConverterFactory;
+import main.retrofit.okhttp.GET;
+import main.retrofit.okhttp.Query;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public final class CallsTest {
+    @Rule
+    public final MockWebServer server = new MockWebServer();
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger concurrent = new AtomicInteger();
+    private final AtomicInteger maxConcurrent = new AtomicInteger();
+    private Service service;
+
+    interface Service {
+        @GET("/")
+        Call<String> get(@Query("delay") String delayMillis);
+
+        @GET("/held")
+        Call<String> held();
+
+        @GET("/fail")
+        Call<String> fail();
+    }
+
+    @Before
+    public void setUp() {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                String path = request.getPath();
+                if (path.equals("/fail")) {
+                    return new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST);
+                }
+                int now = concurrent.incrementAndGet();
+                maxConcurrent.accumulateAndGet(now, Math::max);
+                try {
+                    if (path.equals("/held")) {
+                        release.await(10, SECONDS);
+                    } else {
+                        String delay = path.substring(path.indexOf("delay=") + "delay=".length());
+                        Thread.sleep(Long.parseLong(delay));
+                    }
+                } finally {
+                    concurrent.decrementAndGet();
+                }
+                return new MockResponse().setBody(path);
+            }
+        });
+        service = new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .addConverterFactory(new ToStringConverterFactory())
+                .build()
+                .create(Service.class);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+    }
+
+    @Test
+    public void outcomesArriveInCompletionOrder() {
+        List<Call<String>> calls = Arrays.asList(service.get("600"), service.get("0"), service.get("300"));
+
+        List<String> bodies = Calls.executeAll(calls, 3)
+                .map(outcome -> outcome.response().body())
+                .collect(Collectors.toList());
+        assertThat(bodies).containsExactly("/?delay=0", "/?delay=300", "/?delay=600");
+    }
+
+    @Test
+    public void parallelismIsBounded() {
+        List<Call<String>> calls = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            calls.add(service.get("20"));
+        }
+
+        assertThat(Calls.executeAll(calls, 4).filter(Calls.Outcome::isSuccessful).count()).isEqualTo(30);
+        assertThat(maxConcurrent.get()).isLessThanOrEqualTo(4);
+        assertThat(server.getRequestCount()).isEqualTo(30);
+    }
+
+    @Test
+    public void collectAllDeliversFailures() {
+        List<Call<String>> calls = Arrays.asList(service.get("0"), service.fail(), service.get("0"));
+
+        List<Calls.Outcome<String>> outcomes = Calls.executeAll(calls, 2).collect(Collectors.toList());
+        assertThat(outcomes).hasSize(3);
+        assertThat(outcomes.stream().filter(Calls.Outcome::isSuccessful).count()).isEqualTo(2);
+        Calls.Outcome<String> failed = outcomes.stream()
+                .filter(outcome -> !outcome.isSuccessful())
+                .findFirst()
+                .get();
+        assertThat(failed.call()).isSameAs(calls.get(1));
+        assertThat(failed.response()).isNull();
+        assertThat(failed.failure()).isNotNull();
+    }
+
+    @Test
+    public void failFastCancelsRemainingCalls() {
+        List<Call<String>> calls = new ArrayList<>();
+        calls.add(service.held());
+        calls.add(service.fail());
+        for (int i = 0; i < 10; i++) {
+            calls.add(service.held());
+        }
+
+        try {
+            Calls.executeAll(calls, 2, Calls.OnFailure.ABORT).count();
+            fail();
+        } catch (UncheckedIOException expected) {
+        }
+        assertThat(calls.get(0).isCanceled()).isTrue();
+        for (Call<String> call : calls.subList(2, calls.size())) {
+            assertThat(call.isCanceled()).isTrue();
+            assertThat(call.isExecuted()).isFalse();
+        }
+    }
+
+    @Test
+    public void closingStreamCancelsRemainingCalls() {
+        List<Call<String>> calls = new ArrayList<>();
+        calls.add(service.get("0"));
+        for (int i = 0; i < 5; i++) {
+            calls.add(service.held());
+        }
+
+        try (Stream<Calls.Outcome<String>> outcomes = Calls.executeAll(calls, 2)) {
+            Iterator<Calls.Outcome<String>> iterator = outcomes.iterator();
+            assertThat(iterator.next().call()).isSameAs(calls.get(0));
+        }
+        assertThat(calls.get(0).isCanceled()).isFalse();
+        for (Call<String> call : calls.subList(1, calls.size())) {
+            assertThat(call.isCanceled()).isTrue();
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void interruptedStreamEnds() {
+        List<Call<String>> calls = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            calls.add(service.held());
+        }
+
+        Iterator<Calls.Outcome<String>> outcomes = Calls.executeAll(calls, 1).iterator();
+        Thread.currentThread().interrupt();
+        try {
+            outcomes.hasNext();
+            fail();
+        } catch (UncheckedIOException expected) {
+            assertThat(Thread.interrupted()).isTrue();
+        }
+        assertThat(outcomes.hasNext()).isFalse();
+        for (Call<String> call : calls) {
+            assertThat(call.isCanceled()).isTrue();
+        }
+    }
+
+    @Test
+    public void parallelismMustBePositive() {
+        try {
+            Calls.executeAll(Arrays.asList(service.get("0")), 0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat(e).hasMessage("parallelism < 1: 0");
+        }
+    }
+}
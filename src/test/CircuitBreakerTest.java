@@ -0,0 +1,264 @@
+package test;
+
+import main.retrofit.Call;
+import main.retrofit.Callback;
+import main.retrofit.Circuit;
+import main.retrofit.CircuitOpenException;
+import main.retrofit.Response;
+import main.retrofit.Retrofit;
+import main.retrofit.ToStringConverterFactory;
+import main.retrofit.okhttp.CircuitBreaker;
+import main.retrofit.okhttp.GET;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public final class CircuitBreakerTest {
+    @Rule
+    public final MockWebServer server = new MockWebServer();
+
+    private final List<String> transitions = new CopyOnWriteArrayList<>();
+
+    interface Service {
+        @GET("/")
+        @CircuitBreaker(windowSize = 4, minimumCalls = 4, openMillis = 60_000)
+        Call<String> guarded();
+
+        @GET("/")
+        @CircuitBreaker(windowSize = 4, minimumCalls = 4, openMillis = 100, probes = 1)
+        Call<String> quickToRecover();
+
+        @GET("/a")
+        @CircuitBreaker(perHost = true, windowSize = 2, minimumCalls = 2, openMillis = 60_000)
+        Call<String> first();
+
+        @GET("/b")
+        @CircuitBreaker(perHost = true)
+        Call<String> second();
+
+        @GET("/")
+        @CircuitBreaker(windowSize = 2, minimumCalls = 3)
+        Call<String> invalid();
+
+        @GET("/")
+        Call<String> plain();
+    }
+
+    private Retrofit retrofit(boolean circuitBreakers) {
+        return new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .addConverterFactory(new ToStringConverterFactory())
+                .circuitBreakers(circuitBreakers)
+                .circuitListener(new Circuit.Listener() {
+                    @Override
+                    public void onStateChange(Circuit circuit, Circuit.State from, Circuit.State to) {
+                        transitions.add(circuit.name() + ": " + from + " -> " + to);
+                    }
+                })
+                .build();
+    }
+
+    private void failTimes(int times, Call<String> call) throws IOException {
+        for (int i = 0; i < times; i++) {
+            server.enqueue(new MockResponse().setResponseCode(500));
+            assertThat(call.clone().execute().code()).isEqualTo(500);
+        }
+    }
+
+    private static void enqueue(Call<String> call, final BlockingQueue<Object> outcomes) {
+        call.enqueue(new Callback<String>() {
+            @Override
+            public void onResponse(Call<String> call, Response<String> response) {
+                outcomes.add(response.body());
+            }
+
+            @Override
+            public void onFailure(Call<String> call, Throwable t) {
+                outcomes.add(t);
+            }
+        });
+    }
+
+    @Test
+    public void failuresOpenTheCircuit() throws IOException {
+        Retrofit retrofit = retrofit(false);
+        Service service = retrofit.create(Service.class);
+        failTimes(4, service.guarded());
+
+        Circuit circuit = retrofit.circuit("Service.guarded");
+        assertThat(circuit.state()).isEqualTo(Circuit.State.OPEN);
+        try {
+            service.guarded().execute();
+            fail();
+        } catch (CircuitOpenException e) {
+            assertThat(e).hasMessage("Circuit Service.guarded is open.");
+        }
+        assertThat(server.getRequestCount()).isEqualTo(4);
+        assertThat(transitions).containsExactly("Service.guarded: CLOSED -> OPEN");
+    }
+
+    @Test
+    public void occasionalFailuresKeepItClosed() throws IOException {
+        Retrofit retrofit = retrofit(false);
+        Service service = retrofit.create(Service.class);
+        for (int i = 0; i < 6; i++) {
+            server.enqueue(new MockResponse().setResponseCode(i % 4 == 0 ? 500 : 200).setBody("Hi"));
+            service.guarded().execute();
+        }
+        assertThat(retrofit.circuit("Service.guarded").state()).isEqualTo(Circuit.State.CLOSED);
+        assertThat(transitions).isEmpty();
+    }
+
+    @Test
+    public void successfulProbeClosesTheCircuit() throws Exception {
+        Retrofit retrofit = retrofit(false);
+        Service service = retrofit.create(Service.class);
+        failTimes(4, service.quickToRecover());
+        Thread.sleep(150);
+
+        server.enqueue(new MockResponse().setBody("Hi"));
+        assertThat(service.quickToRecover().execute().body()).isEqualTo("Hi");
+        assertThat(retrofit.circuit("Service.quickToRecover").state()).isEqualTo(Circuit.State.CLOSED);
+        assertThat(transitions).containsExactly(
+                "Service.quickToRecover: CLOSED -> OPEN",
+                "Service.quickToRecover: OPEN -> HALF_OPEN",
+                "Service.quickToRecover: HALF_OPEN -> CLOSED");
+    }
+
+    @Test
+    public void failedProbeReopensTheCircuit() throws Exception {
+        Retrofit retrofit = retrofit(false);
+        Service service = retrofit.create(Service.class);
+        failTimes(4, service.quickToRecover());
+        Thread.sleep(150);
+
+        failTimes(1, service.quickToRecover());
+        assertThat(retrofit.circuit("Service.quickToRecover").state()).isEqualTo(Circuit.State.OPEN);
+        assertThat(transitions).containsExactly(
+                "Service.quickToRecover: CLOSED -> OPEN",
+                "Service.quickToRecover: OPEN -> HALF_OPEN",
+                "Service.quickToRecover: HALF_OPEN -> OPEN");
+    }
+
+    @Test
+    public void callFromBeforeTheCircuitOpenedIsNotAProbe() throws Exception {
+        // The first and sixth requests wait for their latch; the four in between fail.
+        final CountDownLatch releaseEarly = new CountDownLatch(1);
+        final CountDownLatch releaseProbe = new CountDownLatch(1);
+        final BlockingQueue<Integer> arrived = new LinkedBlockingQueue<>();
+        final AtomicInteger requests = new AtomicInteger();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                int number = requests.incrementAndGet();
+                arrived.add(number);
+                if (number == 1 || number == 6) {
+                    (number == 1 ? releaseEarly : releaseProbe).await(10, SECONDS);
+                    return new MockResponse().setBody("Hi");
+                }
+                return new MockResponse().setResponseCode(500);
+            }
+        });
+        Retrofit retrofit = retrofit(false);
+        Service service = retrofit.create(Service.class);
+        BlockingQueue<Object> outcomes = new LinkedBlockingQueue<>();
+
+        enqueue(service.quickToRecover(), outcomes);
+        assertThat(arrived.poll(5, SECONDS)).isEqualTo(1);
+        for (int i = 0; i < 4; i++) {
+            service.quickToRecover().execute();
+        }
+        arrived.clear();
+        Thread.sleep(150);
+        enqueue(service.quickToRecover(), outcomes);
+        assertThat(arrived.poll(5, SECONDS)).isEqualTo(6);
+        assertThat(retrofit.circuit("Service.quickToRecover").state()).isEqualTo(Circuit.State.HALF_OPEN);
+
+        // Succeeds while the probe is out, but it started while the circuit was closed.
+        releaseEarly.countDown();
+        assertThat(outcomes.poll(5, SECONDS)).isEqualTo("Hi");
+        assertThat(retrofit.circuit("Service.quickToRecover").state()).isEqualTo(Circuit.State.HALF_OPEN);
+
+        releaseProbe.countDown();
+        assertThat(outcomes.poll(5, SECONDS)).isEqualTo("Hi");
+        assertThat(retrofit.circuit("Service.quickToRecover").state()).isEqualTo(Circuit.State.CLOSED);
+    }
+
+    @Test
+    public void hostCircuitIsSharedBetweenMethods() throws IOException {
+        Retrofit retrofit = retrofit(false);
+        Service service = retrofit.create(Service.class);
+        Call<String> first = service.first();
+        // Created second, so it shares the circuit first made rather than its own settings.
+        Call<String> second = service.second();
+        failTimes(2, first);
+
+        assertThat(retrofit.circuit(server.url("/").host()).state()).isEqualTo(Circuit.State.OPEN);
+        try {
+            second.execute();
+            fail();
+        } catch (CircuitOpenException expected) {
+        }
+        assertThat(server.getRequestCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void builderOptionGuardsEveryHost() throws IOException {
+        Retrofit retrofit = retrofit(true);
+        server.enqueue(new MockResponse().setBody("Hi"));
+        retrofit.create(Service.class).plain().execute();
+
+        assertThat(retrofit.circuit(server.url("/").host()).state()).isEqualTo(Circuit.State.CLOSED);
+    }
+
+    @Test
+    public void derivedInstanceGuardsItsOwnHost() throws IOException {
+        Retrofit parent = new Retrofit.Builder()
+                .baseUrl("http://example.invalid/")
+                .addConverterFactory(new ToStringConverterFactory())
+                .circuitBreakers(true)
+                .build();
+        parent.create(Service.class).plain();
+        Retrofit derived = parent.newBuilder()
+                .baseUrl(server.url("/"))
+                .build();
+        server.enqueue(new MockResponse().setBody("Hi"));
+        derived.create(Service.class).plain().execute();
+
+        assertThat(derived.circuit(server.url("/").host())).isNotNull();
+        assertThat(derived.circuit("example.invalid")).isNull();
+    }
+
+    @Test
+    public void unguardedMethodHasNoCircuit() {
+        Retrofit retrofit = retrofit(false);
+        retrofit.create(Service.class).plain();
+        assertThat(retrofit.circuit(server.url("/").host())).isNull();
+    }
+
+    @Test
+    public void invalidSettings() {
+        try {
+            retrofit(false).create(Service.class).invalid();
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat(e).hasMessage("@CircuitBreaker sizes must satisfy 1 <= minimumCalls <= windowSize.\n"
+                    + "    for method Service.invalid");
+        }
+    }
+}
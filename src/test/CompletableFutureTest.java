@@ -0,0 +1,150 @@
+package test;
+
+import main.retrofit.CompletableFutureCallAdapterFactory;
+import main.retrofit.HttpException;
+import main.retrofit.Response;
+import main.retrofit.Retrofit;
+import main.retrofit.ToStringConverterFactory;
+import main.retrofit.okhttp.GET;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.SocketPolicy;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public final class CompletableFutureTest {
+    @Rule
+    public final MockWebServer server = new MockWebServer();
+
+    interface Service {
+        @GET("/")
+        CompletableFuture<String> body();
+
+        @GET("/")
+        CompletableFuture<Response<String>> response();
+    }
+
+    private Service service;
+
+    @Before
+    public void setUp() {
+        Retrofit retrofit = new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .addConverterFactory(new ToStringConverterFactory())
+                .build();
+        service = retrofit.create(Service.class);
+    }
+
+    @Test
+    public void bodySuccess200() throws Exception {
+        server.enqueue(new MockResponse().setBody("Hi"));
+
+        assertThat(service.body().get(10, SECONDS)).isEqualTo("Hi");
+    }
+
+    @Test
+    public void bodySuccess404() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(404));
+
+        try {
+            service.body().get(10, SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(HttpException.class).hasMessage("HTTP 404 Client Error");
+        }
+    }
+
+    @Test
+    public void bodyFailure() throws Exception {
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST));
+
+        try {
+            service.body().get(10, SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(IOException.class);
+        }
+    }
+
+    @Test
+    public void responseSuccess404() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(404).setBody("Hi"));
+
+        Response<String> response = service.response().get(10, SECONDS);
+        assertThat(response.isSuccessful()).isFalse();
+        assertThat(response.errorBody().string()).isEqualTo("Hi");
+    }
+
+    @Test
+    public void responseSuccess200() throws Exception {
+        server.enqueue(new MockResponse().setBody("Hi"));
+
+        Response<String> response = service.response().get(10, SECONDS);
+        assertThat(response.isSuccessful()).isTrue();
+        assertThat(response.body()).isEqualTo("Hi");
+    }
+
+    @Test
+    public void cancelingFutureCancelsCall() throws Exception {
+        OkHttpClient client = new OkHttpClient();
+        Retrofit retrofit = new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .client(client)
+                .addConverterFactory(new ToStringConverterFactory())
+                .build();
+        Service service = retrofit.create(Service.class);
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+
+        CompletableFuture<String> future = service.body();
+        server.takeRequest();
+        assertThat(future.cancel(true)).isTrue();
+        assertThat(future.isCancelled()).isTrue();
+        // The HTTP call is abandoned right away rather than left running until the read timeout.
+        long deadline = System.nanoTime() + SECONDS.toNanos(5);
+        while (client.dispatcher().runningCallsCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(client.dispatcher().runningCallsCount()).isZero();
+    }
+
+    @Test
+    public void completesOnCallerChosenExecutor() throws Exception {
+        final AtomicReference<Thread> completionThread = new AtomicReference<>();
+        Executor executor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                Thread thread = new Thread(command, "completion");
+                completionThread.set(thread);
+                thread.start();
+            }
+        };
+        Retrofit retrofit = new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .addConverterFactory(new ToStringConverterFactory())
+                .addCallAdapterFactory(CompletableFutureCallAdapterFactory.create(executor))
+                .build();
+        Service service = retrofit.create(Service.class);
+
+        final AtomicReference<Thread> stageThread = new AtomicReference<>();
+        CompletableFuture<String> body = service.body().thenApply(value -> {
+            stageThread.set(Thread.currentThread());
+            return value;
+        });
+        // Respond only once the stage is attached, so it cannot run on this thread.
+        server.enqueue(new MockResponse().setBody("Hi"));
+        assertThat(body.get(10, SECONDS)).isEqualTo("Hi");
+        assertThat(stageThread.get()).isSameAs(completionThread.get());
+    }
+}
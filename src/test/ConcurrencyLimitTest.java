@@ -0,0 +1,203 @@
+package test;
+
+import main.retrofit.Call;
+import main.retrofit.Callback;
+import main.retrofit.LimitExceededException;
+import main.retrofit.Response;
+import main.retrofit.Retrofit;
+import main.retrofit.ToStringConverterFactory;
+import main.retrofit.okhttp.ConcurrencyLimit;
+import main.retrofit.okhttp.GET;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public final class ConcurrencyLimitTest {
+    @Rule
+    public final MockWebServer server = new MockWebServer();
+
+    interface Service {
+        @GET("/")
+        @ConcurrencyLimit(initialLimit = 2, maxLimit = 2, maxQueued = 10)
+        Call<String> pair();
+
+        @GET("/")
+        @ConcurrencyLimit(initialLimit = 1, maxLimit = 1, maxQueued = 1)
+        Call<String> single();
+
+        @GET("/")
+        @ConcurrencyLimit(initialLimit = 10)
+        Call<String> adaptive();
+
+        @GET("/")
+        @ConcurrencyLimit(initialLimit = 1, maxLimit = 5)
+        Call<String> growing();
+
+        @GET("/")
+        @ConcurrencyLimit(minLimit = 5, initialLimit = 2)
+        Call<String> invalid();
+
+        @GET("/")
+        Call<String> plain();
+    }
+
+    private Retrofit retrofit(boolean adaptiveConcurrency) {
+        return new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .addConverterFactory(new ToStringConverterFactory())
+                .adaptiveConcurrency(adaptiveConcurrency)
+                .build();
+    }
+
+    /** Holds every request until {@code release} opens, recording the most seen at once. */
+    private void holdUntil(final CountDownLatch release, final AtomicInteger inFlight, final AtomicInteger peak) {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                int now = inFlight.incrementAndGet();
+                peak.accumulateAndGet(now, Math::max);
+                release.await(10, SECONDS);
+                inFlight.decrementAndGet();
+                return new MockResponse().setBody("Hi");
+            }
+        });
+    }
+
+    @Test
+    public void callsPastTheLimitWait() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        holdUntil(release, inFlight, peak);
+        Service service = retrofit(false).create(Service.class);
+        RecordingCallback callback = new RecordingCallback();
+
+        for (int i = 0; i < 4; i++) {
+            service.pair().enqueue(callback);
+        }
+        Thread.sleep(200);
+        assertThat(server.getRequestCount()).isEqualTo(2);
+        release.countDown();
+        for (int i = 0; i < 4; i++) {
+            assertThat(callback.take()).isEqualTo("Hi");
+        }
+        assertThat(peak.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void callsPastAFullQueueAreRejected() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        holdUntil(release, new AtomicInteger(), new AtomicInteger());
+        Service service = retrofit(false).create(Service.class);
+        RecordingCallback callback = new RecordingCallback();
+
+        service.single().enqueue(callback);
+        service.single().enqueue(callback);
+        try {
+            service.single().execute();
+            fail();
+        } catch (LimitExceededException e) {
+            assertThat(e).hasMessage("Concurrency limit of 1 exceeded.");
+        }
+        release.countDown();
+        assertThat(callback.take()).isEqualTo("Hi");
+        assertThat(callback.take()).isEqualTo("Hi");
+    }
+
+    @Test
+    public void canceledWaiterLeavesTheQueue() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        holdUntil(release, new AtomicInteger(), new AtomicInteger());
+        Service service = retrofit(false).create(Service.class);
+        RecordingCallback callback = new RecordingCallback();
+
+        service.single().enqueue(callback);
+        Call<String> waiting = service.single();
+        waiting.enqueue(callback);
+        waiting.cancel();
+        assertThat(callback.take()).isEqualTo("failure Canceled");
+
+        service.single().enqueue(callback);
+        release.countDown();
+        assertThat(callback.take()).isEqualTo("Hi");
+        assertThat(callback.take()).isEqualTo("Hi");
+        assertThat(server.getRequestCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void throttledResponsesShrinkTheLimit() throws IOException {
+        Retrofit retrofit = retrofit(false);
+        Service service = retrofit.create(Service.class);
+        for (int i = 0; i < 3; i++) {
+            server.enqueue(new MockResponse().setResponseCode(503));
+            assertThat(service.adaptive().execute().code()).isEqualTo(503);
+        }
+        assertThat(retrofit.serviceMethod(Service.class, "adaptive").concurrencyLimit()).isEqualTo(7);
+    }
+
+    @Test
+    public void busyMethodGrowsTheLimit() throws IOException {
+        Retrofit retrofit = retrofit(false);
+        Service service = retrofit.create(Service.class);
+        for (int i = 0; i < 3; i++) {
+            server.enqueue(new MockResponse().setBody("Hi"));
+            assertThat(service.growing().execute().body()).isEqualTo("Hi");
+        }
+        assertThat(retrofit.serviceMethod(Service.class, "growing").concurrencyLimit()).isGreaterThan(1);
+    }
+
+    @Test
+    public void unlimitedMethodReportsNoLimit() {
+        assertThat(retrofit(false).serviceMethod(Service.class, "plain").concurrencyLimit()).isEqualTo(-1);
+    }
+
+    @Test
+    public void builderOptionLimitsEveryMethod() {
+        assertThat(retrofit(true).serviceMethod(Service.class, "plain").concurrencyLimit()).isEqualTo(20);
+    }
+
+    @Test
+    public void invalidLimits() {
+        try {
+            retrofit(false).create(Service.class).invalid();
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat(e).hasMessage(
+                    "@ConcurrencyLimit limits must satisfy 1 <= minLimit <= initialLimit <= maxLimit.\n"
+                            + "    for method Service.invalid");
+        }
+    }
+
+    static final class RecordingCallback implements Callback<String> {
+        final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+
+        @Override
+        public void onResponse(Call<String> call, Response<String> response) {
+            events.add(response.body());
+        }
+
+        @Override
+        public void onFailure(Call<String> call, Throwable t) {
+            events.add("failure " + t.getMessage());
+        }
+
+        String take() throws InterruptedException {
+            String event = events.poll(10, SECONDS);
+            assertThat(event).isNotNull();
+            return event;
+        }
+    }
+}
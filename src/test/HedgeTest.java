@@ -0,0 +1,135 @@
+package test;
+
+import main.retrofit.Call;
+import main.retrofit.Retrofit;
+import main.retrofit.ToStringConverterFactory;
+import main.retrofit.okhttp.Body;
+import main.retrofit.okhttp.GET;
+import main.retrofit.okhttp.Hedge;
+import main.retrofit.okhttp.POST;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public final class HedgeTest {
+    @Rule
+    public final MockWebServer server = new MockWebServer();
+
+    interface Service {
+        @GET("/")
+        @Hedge(delayMillis = 50)
+        Call<String> hedged();
+
+        @GET("/")
+        @Hedge(delayMillis = 500)
+        Call<String> patient();
+
+        @GET("/")
+        @Hedge
+        Call<String> hedgedByLatency();
+
+        @POST("/")
+        @Hedge(delayMillis = 50)
+        Call<String> notIdempotent(@Body String body);
+    }
+
+    /** Answers the first request after {@code firstDelayMillis} and later ones immediately. */
+    private AtomicInteger slowFirst(final long firstDelayMillis) {
+        final AtomicInteger requests = new AtomicInteger();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (requests.incrementAndGet() == 1) {
+                    Thread.sleep(firstDelayMillis);
+                    return new MockResponse().setBody("slow");
+                }
+                return new MockResponse().setBody("fast");
+            }
+        });
+        return requests;
+    }
+
+    private Service service(double hedgeBudget) {
+        Retrofit retrofit = new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .addConverterFactory(new ToStringConverterFactory())
+                .hedgeBudget(hedgeBudget)
+                .build();
+        return retrofit.create(Service.class);
+    }
+
+    @Test
+    public void slowAttemptIsHedged() throws Exception {
+        AtomicInteger requests = slowFirst(2000);
+        Service service = service(1.0);
+
+        long start = System.nanoTime();
+        assertThat(service.hedged().execute().body()).isEqualTo("fast");
+        assertThat(System.nanoTime() - start).isLessThan(1_000_000_000L);
+        assertThat(requests.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void fastAttemptIsNotHedged() throws Exception {
+        server.enqueue(new MockResponse().setBody("Hi"));
+        Service service = service(1.0);
+
+        assertThat(service.patient().execute().body()).isEqualTo("Hi");
+        // Past the point where the hedge would have started had the response not won.
+        Thread.sleep(600);
+        assertThat(server.getRequestCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void observedLatencySetsHedgeDelay() throws Exception {
+        final AtomicInteger requests = new AtomicInteger();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (requests.incrementAndGet() == 17) {
+                    Thread.sleep(2000);
+                    return new MockResponse().setBody("slow");
+                }
+                return new MockResponse().setBody("fast");
+            }
+        });
+        Service service = service(1.0);
+
+        // Until enough latencies are observed there is no delay to hedge after.
+        for (int i = 0; i < 16; i++) {
+            assertThat(service.hedgedByLatency().execute().body()).isEqualTo("fast");
+        }
+        assertThat(requests.get()).isEqualTo(16);
+        assertThat(service.hedgedByLatency().execute().body()).isEqualTo("fast");
+        assertThat(requests.get()).isEqualTo(18);
+    }
+
+    @Test
+    public void exhaustedBudgetSkipsHedge() throws Exception {
+        AtomicInteger requests = slowFirst(300);
+        Service service = service(0);
+
+        assertThat(service.hedged().execute().body()).isEqualTo("slow");
+        assertThat(requests.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void hedgeRequiresGet() {
+        Service service = service(1.0);
+        try {
+            service.notIdempotent("Hi");
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat(e).hasMessage("@Hedge is only allowed on @GET methods.\n"
+                    + "    for method Service.notIdempotent");
+        }
+    }
+}
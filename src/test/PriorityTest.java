@@ -0,0 +1,180 @@
+package test;
+
+import main.retrofit.Call;
+import main.retrofit.Callback;
+import main.retrofit.Response;
+import main.retrofit.Retrofit;
+import main.retrofit.ToStringConverterFactory;
+import main.retrofit.okhttp.GET;
+import main.retrofit.okhttp.Priority;
+import main.retrofit.okhttp.Query;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public final class PriorityTest {
+    @Rule
+    public final MockWebServer server = new MockWebServer();
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final RecordingCallback callback = new RecordingCallback();
+    private Service service;
+
+    interface Service {
+        @GET("/")
+        Call<String> get(@Query("name") String name, @Priority int priority);
+
+        @GET("/")
+        @Priority(5)
+        Call<String> urgent(@Query("name") String name);
+
+        @GET("/")
+        Call<String> invalid(@Priority String priority);
+    }
+
+    @Before
+    public void setUp() {
+        // The first request is held until released; one call per host runs at a time.
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                String path = request.getPath();
+                String name = path.substring(path.indexOf("name=") + "name=".length());
+                if ("blocker".equals(name)) {
+                    release.await(10, SECONDS);
+                }
+                return new MockResponse().setBody(name);
+            }
+        });
+        OkHttpClient client = new OkHttpClient();
+        client.dispatcher().setMaxRequestsPerHost(1);
+        service = service(client, server.url("/"));
+    }
+
+    private static Service service(OkHttpClient client, HttpUrl baseUrl) {
+        Retrofit retrofit = new Retrofit.Builder()
+                .baseUrl(baseUrl)
+                .client(client)
+                .addConverterFactory(new ToStringConverterFactory())
+                .priorityScheduling(true)
+                .build();
+        return retrofit.create(Service.class);
+    }
+
+    private List<String> takeAll(int count) throws InterruptedException {
+        List<String> bodies = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            bodies.add(callback.take());
+        }
+        return bodies;
+    }
+
+    @Test
+    public void higherPriorityStartsFirst() throws Exception {
+        service.get("blocker", 0).enqueue(callback);
+        service.get("low", 0).enqueue(callback);
+        service.get("high", 10).enqueue(callback);
+        service.get("lower", -1).enqueue(callback);
+
+        release.countDown();
+        assertThat(takeAll(4)).containsExactly("blocker", "high", "low", "lower");
+    }
+
+    @Test
+    public void methodPriorityApplies() throws Exception {
+        service.get("blocker", 0).enqueue(callback);
+        service.get("normal", Priority.NORMAL).enqueue(callback);
+        service.urgent("urgent").enqueue(callback);
+
+        release.countDown();
+        assertThat(takeAll(3)).containsExactly("blocker", "urgent", "normal");
+    }
+
+    @Test
+    public void longWaitOutranksHigherPriority() throws Exception {
+        service.get("blocker", 0).enqueue(callback);
+        service.get("patient", 0).enqueue(callback);
+        // One level of priority is worth 100ms of waiting.
+        Thread.sleep(300);
+        service.get("newer", 1).enqueue(callback);
+
+        release.countDown();
+        assertThat(takeAll(3)).containsExactly("blocker", "patient", "newer");
+    }
+
+    @Test
+    public void overallLimitOrdersHostsAndInstancesTogether() throws Exception {
+        OkHttpClient client = new OkHttpClient();
+        client.dispatcher().setMaxRequests(1);
+        // Two hosts for the same server, each called through its own Retrofit instance.
+        Service byName = service(client, server.url("/").newBuilder().host("localhost").build());
+        Service byAddress = service(client, server.url("/").newBuilder().host("127.0.0.1").build());
+
+        byName.get("blocker", 0).enqueue(callback);
+        byAddress.get("low", 0).enqueue(callback);
+        byName.get("high", 10).enqueue(callback);
+
+        release.countDown();
+        assertThat(takeAll(3)).containsExactly("blocker", "high", "low");
+    }
+
+    @Test
+    public void canceledWaitingCallFailsAtOnce() throws Exception {
+        service.get("blocker", 0).enqueue(callback);
+        Call<String> waiting = service.get("waiting", 0);
+        waiting.enqueue(callback);
+
+        waiting.cancel();
+        assertThat(callback.take()).isEqualTo("failure Canceled");
+        release.countDown();
+        assertThat(callback.take()).isEqualTo("blocker");
+        assertThat(server.getRequestCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void priorityParameterMustBeInt() {
+        try {
+            service.invalid("high");
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat(e).hasMessage("@Priority parameter type must be int or Integer. (parameter #1)\n"
+                    + "    for method Service.invalid");
+        }
+    }
+
+    static final class RecordingCallback implements Callback<String> {
+        final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+
+        @Override
+        public void onResponse(Call<String> call, Response<String> response) {
+            events.add(response.body());
+        }
+
+        @Override
+        public void onFailure(Call<String> call, Throwable t) {
+            events.add("failure " + t.getMessage());
+        }
+
+        String take() throws InterruptedException {
+            String event = events.poll(10, SECONDS);
+            assertThat(event).isNotNull();
+            return event;
+        }
+    }
+}
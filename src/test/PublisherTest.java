@@ -0,0 +1,221 @@
+package test;
+
+import main.retrofit.Call;
+import main.retrofit.Callback;
+import main.retrofit.Flow;
+import main.retrofit.HttpException;
+import main.retrofit.PublisherCallAdapterFactory;
+import main.retrofit.Response;
+import main.retrofit.Retrofit;
+import main.retrofit.okhttp.GET;
+import main.retrofit.okhttp.Streaming;
+import okhttp3.Request;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okio.Buffer;
+import okio.ByteString;
+import okio.ForwardingSource;
+import okio.Okio;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public final class PublisherTest {
+    @Rule
+    public final MockWebServer server = new MockWebServer();
+
+    interface Service {
+        @GET("/")
+        @Streaming
+        Flow.Publisher<ByteString> body();
+    }
+
+    private Service service;
+
+    @Before
+    public void setUp() {
+        Retrofit retrofit = new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .build();
+        service = retrofit.create(Service.class);
+    }
+
+    @Test
+    public void emitsOnlyWhatWasRequested() throws Exception {
+        Buffer body = new Buffer();
+        for (int i = 0; i < 3 * 8192 + 10; i++) {
+            body.writeByte('a' + i % 26);
+        }
+        ByteString expected = body.snapshot();
+        server.enqueue(new MockResponse().setBody(body));
+
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        service.body().subscribe(subscriber);
+        subscriber.subscription.request(1);
+        Object first = subscriber.take();
+        assertThat(first).isInstanceOf(ByteString.class);
+        subscriber.assertNoEvents();
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        Buffer received = new Buffer().write((ByteString) first);
+        Object event;
+        while ((event = subscriber.take()) instanceof ByteString) {
+            received.write((ByteString) event);
+        }
+        assertThat(event).isEqualTo(RecordingSubscriber.COMPLETE);
+        assertThat(received.readByteString()).isEqualTo(expected);
+    }
+
+    @Test
+    public void cancelStopsEmission() throws Exception {
+        Buffer body = new Buffer();
+        for (int i = 0; i < 4 * 8192; i++) {
+            body.writeByte('x');
+        }
+        server.enqueue(new MockResponse().setBody(body));
+
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        service.body().subscribe(subscriber);
+        subscriber.subscription.request(1);
+        assertThat(subscriber.take()).isInstanceOf(ByteString.class);
+
+        subscriber.subscription.cancel();
+        subscriber.subscription.request(10);
+        subscriber.assertNoEvents();
+    }
+
+    @Test
+    public void responseAfterCancelIsClosed() throws Exception {
+        DeferredCall call = new DeferredCall();
+        Flow.Publisher<ByteString> publisher = (Flow.Publisher<ByteString>) PublisherCallAdapterFactory.create()
+                .get(Service.class.getMethod("body").getGenericReturnType(), new Annotation[0], null)
+                .adapt((Call) call);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        subscriber.subscription.cancel();
+
+        // OkHttp can still deliver a response after the call was canceled.
+        final AtomicBoolean closed = new AtomicBoolean();
+        ForwardingSource source = new ForwardingSource(new Buffer().writeUtf8("Hi")) {
+            @Override
+            public void close() throws IOException {
+                closed.set(true);
+                super.close();
+            }
+        };
+        call.callback.onResponse(call, Response.success(ResponseBody.create(null, 2, Okio.buffer(source))));
+        assertThat(closed.get()).isTrue();
+        subscriber.assertNoEvents();
+    }
+
+    @Test
+    public void httpErrorSignalsOnError() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(404));
+
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        service.body().subscribe(subscriber);
+        subscriber.subscription.request(1);
+        Object event = subscriber.take();
+        assertThat(event).isInstanceOf(HttpException.class);
+        assertThat(((HttpException) event).code()).isEqualTo(404);
+    }
+
+    @Test
+    public void nonPositiveRequestSignalsOnError() throws Exception {
+        server.enqueue(new MockResponse().setBody("Hi"));
+
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        service.body().subscribe(subscriber);
+        subscriber.subscription.request(0);
+        assertThat(subscriber.take()).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    /** A call that only remembers its callback, so the test decides when it completes. */
+    static final class DeferredCall implements Call<ResponseBody> {
+        volatile Callback<ResponseBody> callback;
+        volatile boolean canceled;
+
+        @Override
+        public Response<ResponseBody> execute() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void enqueue(Callback<ResponseBody> callback) {
+            this.callback = callback;
+        }
+
+        @Override
+        public boolean isExecuted() {
+            return callback != null;
+        }
+
+        @Override
+        public void cancel() {
+            canceled = true;
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return canceled;
+        }
+
+        @Override
+        public Call<ResponseBody> clone() {
+            return this;
+        }
+
+        @Override
+        public Request request() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    static final class RecordingSubscriber implements Flow.Subscriber<ByteString> {
+        static final Object COMPLETE = "complete";
+
+        final BlockingQueue<Object> events = new LinkedBlockingQueue<>();
+        volatile Flow.Subscription subscription;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(ByteString item) {
+            events.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            events.add(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            events.add(COMPLETE);
+        }
+
+        Object take() throws InterruptedException {
+            Object event = events.poll(10, SECONDS);
+            assertThat(event).isNotNull();
+            return event;
+        }
+
+        void assertNoEvents() throws InterruptedException {
+            assertThat(events.poll(200, MILLISECONDS)).isNull();
+        }
+    }
+}
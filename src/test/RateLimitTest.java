@@ -0,0 +1,219 @@
+package test;
+
+import main.retrofit.Call;
+import main.retrofit.Callback;
+import main.retrofit.LimitExceededException;
+import main.retrofit.Response;
+import main.retrofit.Retrofit;
+import main.retrofit.ToStringConverterFactory;
+import main.retrofit.okhttp.GET;
+import main.retrofit.okhttp.RateLimit;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public final class RateLimitTest {
+    @Rule
+    public final MockWebServer server = new MockWebServer();
+
+    private final BlockingQueue<Object> outcomes = new LinkedBlockingQueue<>();
+    private Service service;
+
+    interface Service {
+        @GET("/")
+        @RateLimit(permitsPerSecond = 10)
+        Call<String> paced();
+
+        @GET("/")
+        @RateLimit(permitsPerSecond = 1, burst = 5)
+        Call<String> bursty();
+
+        @GET("/")
+        @RateLimit(permitsPerSecond = 1, maxWaitMillis = 100)
+        Call<String> impatient();
+
+        @GET("/")
+        @RateLimit(permitsPerSecond = 1, maxWaitMillis = 1500)
+        Call<String> patient();
+
+        @GET("/other")
+        @RateLimit(permitsPerSecond = 100, maxWaitMillis = 100)
+        Call<String> sameHost();
+
+        @GET("/")
+        @RateLimit(permitsPerSecond = 0)
+        Call<String> invalid();
+    }
+
+    @Before
+    public void setUp() {
+        service = new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .addConverterFactory(new ToStringConverterFactory())
+                .build()
+                .create(Service.class);
+    }
+
+    private void enqueue(Call<String> call) {
+        call.enqueue(new Callback<String>() {
+            @Override
+            public void onResponse(Call<String> call, Response<String> response) {
+                outcomes.add(response.body());
+            }
+
+            @Override
+            public void onFailure(Call<String> call, Throwable t) {
+                outcomes.add(t);
+            }
+        });
+    }
+
+    @Test
+    public void executePacesCalls() throws IOException {
+        for (int i = 0; i < 5; i++) {
+            server.enqueue(new MockResponse().setBody("Hi"));
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            assertThat(service.paced().execute().body()).isEqualTo("Hi");
+        }
+        // The first token is free and each later one is due 100 ms after the one before.
+        assertThat(System.nanoTime() - start).isGreaterThan(TimeUnit.MILLISECONDS.toNanos(390));
+    }
+
+    @Test
+    public void enqueueWaitsWithoutBlocking() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            server.enqueue(new MockResponse().setBody("Hi"));
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            enqueue(service.paced());
+        }
+        assertThat(System.nanoTime() - start).isLessThan(TimeUnit.MILLISECONDS.toNanos(100));
+        for (int i = 0; i < 5; i++) {
+            assertThat(outcomes.poll(5, SECONDS)).isEqualTo("Hi");
+        }
+        assertThat(System.nanoTime() - start).isGreaterThan(TimeUnit.MILLISECONDS.toNanos(390));
+    }
+
+    @Test
+    public void burstGoesAtOnce() throws IOException {
+        for (int i = 0; i < 5; i++) {
+            server.enqueue(new MockResponse().setBody("Hi"));
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            service.bursty().execute();
+        }
+        assertThat(System.nanoTime() - start).isLessThan(TimeUnit.MILLISECONDS.toNanos(900));
+    }
+
+    @Test
+    public void callThatWouldWaitTooLongFails() throws IOException {
+        server.enqueue(new MockResponse().setBody("Hi"));
+
+        assertThat(service.impatient().execute().body()).isEqualTo("Hi");
+        try {
+            service.impatient().execute();
+            fail();
+        } catch (LimitExceededException e) {
+            assertThat(e).hasMessage("Rate limit of " + server.url("/").host() + " exceeded.");
+        }
+        assertThat(server.getRequestCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void methodsShareTheirHostsBucket() throws IOException {
+        server.enqueue(new MockResponse().setBody("Hi"));
+
+        // The host's bucket allows one call a second, as set by the method used first.
+        service.impatient().execute();
+        try {
+            service.sameHost().execute();
+            fail();
+        } catch (LimitExceededException expected) {
+        }
+    }
+
+    @Test
+    public void canceledCallStopsWaiting() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            server.enqueue(new MockResponse().setBody("Hi"));
+            service.bursty().execute();
+        }
+
+        // The burst is spent, so this call waits about a second for its token.
+        Call<String> waiting = service.bursty();
+        enqueue(waiting);
+        waiting.cancel();
+        Object outcome = outcomes.poll(500, TimeUnit.MILLISECONDS);
+        assertThat(outcome).isInstanceOf(IOException.class);
+        assertThat(((IOException) outcome)).hasMessage("Canceled");
+        assertThat(server.getRequestCount()).isEqualTo(5);
+    }
+
+    @Test
+    public void canceledCallGivesItsTokenBack() throws Exception {
+        server.enqueue(new MockResponse().setBody("Hi"));
+        server.enqueue(new MockResponse().setBody("Hi"));
+        service.patient().execute();
+
+        // This call takes the token due in a second, then gives it back.
+        Call<String> waiting = service.patient();
+        enqueue(waiting);
+        waiting.cancel();
+        assertThat(outcomes.poll(500, TimeUnit.MILLISECONDS)).isInstanceOf(IOException.class);
+
+        // Otherwise the next token would be two seconds away, past this method's wait.
+        assertThat(service.patient().execute().body()).isEqualTo("Hi");
+        assertThat(server.getRequestCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void derivedInstanceLimitsItsOwnHost() throws IOException {
+        Retrofit parent = new Retrofit.Builder()
+                .baseUrl("http://example.invalid/")
+                .addConverterFactory(new ToStringConverterFactory())
+                .build();
+        parent.create(Service.class).impatient();
+        Service derived = parent.newBuilder()
+                .baseUrl(server.url("/"))
+                .build()
+                .create(Service.class);
+        server.enqueue(new MockResponse().setBody("Hi"));
+
+        derived.impatient().execute();
+        try {
+            derived.impatient().execute();
+            fail();
+        } catch (LimitExceededException e) {
+            assertThat(e).hasMessage("Rate limit of " + server.url("/").host() + " exceeded.");
+        }
+    }
+
+    @Test
+    public void invalidSettingsFailParsing() {
+        try {
+            service.invalid();
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat(e).hasMessage("@RateLimit permitsPerSecond must be positive.\n"
+                    + "    for method Service.invalid");
+        }
+    }
+}
@@ -17,8 +17,10 @@ package test;
 
 import main.retrofit.*;
 import main.retrofit.okhttp.*;
+import okhttp3.Dispatcher;
 import okhttp3.HttpUrl;
 import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
 import okhttp3.RequestBody;
 import okhttp3.ResponseBody;
 import okhttp3.mockwebserver.MockResponse;
@@ -29,12 +31,17 @@ import org.junit.Test;
 import java.io.IOException;
 import java.lang.annotation.Annotation;
 import java.lang.annotation.Retention;
+import java.lang.reflect.Method;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -93,6 +100,11 @@ public final class RetrofitTest {
   interface StringService {
     @GET("/") String get();
   }
+  interface BlockingService {
+    @GET("/") String body();
+    @GET("/") Response<String> response();
+    @GET("/") Call<String> call();
+  }
   interface UnresolvableResponseType {
     @GET("/") <T> Call<T> typeVariable();
     @GET("/") <T extends ResponseBody> Call<T> typeVariableUpperBound();
@@ -118,6 +130,18 @@ public final class RetrofitTest {
     @Retention(RUNTIME)
     @interface Foo {}
   }
+  interface UrlTemplates {
+    @GET("/users/{id}/repos") Call<ResponseBody> repos(@Path("id") String id,
+        @Query("page") Integer page, @Query("sort") String sort);
+    @GET("/search?q=all") Call<ResponseBody> search(@Query("page") Integer page);
+    @GET("/users/{id}") Call<ResponseBody> unknownPath(@Path("name") String name);
+    @GET("/users/{id}") Call<ResponseBody> unboundPath();
+    @GET("users/{id}") Call<ResponseBody> encodedRepos(@Path(value = "id", encoded = true) String id);
+  }
+  interface Bodies {
+    @POST("/") Call<ResponseBody> number(@Body Integer value);
+    @POST("/") Call<ResponseBody> unannotated(Integer value);
+  }
   interface MutableParameters {
     @GET("/") Call<String> method(@Query("i") AtomicInteger value);
   }
@@ -135,6 +159,38 @@ public final class RetrofitTest {
     assertThat(example.toString()).isNotEmpty();
   }
 
+  @Test
+  public void objectMethodsAnsweredByProxyIdentity() {
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl(server.url("/"))
+        .build();
+    CallMethod example = retrofit.create(CallMethod.class);
+    CallMethod other = retrofit.create(CallMethod.class);
+
+    assertThat(example.equals(example)).isTrue();
+    assertThat(example.equals(other)).isFalse();
+    assertThat(example.hashCode()).isEqualTo(System.identityHashCode(example));
+    assertThat(example.toString()).startsWith(CallMethod.class.getName() + "@");
+  }
+
+  @Test
+  public void alternatingMethodsDispatchToTheirOwnServiceMethod() throws Exception {
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl(server.url("/"))
+        .build();
+    UrlTemplates service = retrofit.create(UrlTemplates.class);
+
+    server.enqueue(new MockResponse());
+    server.enqueue(new MockResponse());
+    server.enqueue(new MockResponse());
+    service.search(1).execute();
+    service.repos("jake", null, null).execute();
+    service.search(2).execute();
+    assertEquals("/search?q=all&page=1", server.takeRequest().getPath());
+    assertEquals("/users/jake/repos", server.takeRequest().getPath());
+    assertEquals("/search?q=all&page=2", server.takeRequest().getPath());
+  }
+
   @Test
   public void interfaceWithExtendIsNotSupported() {
     Retrofit retrofit = new Retrofit.Builder()
@@ -273,6 +329,45 @@ public final class RetrofitTest {
     }
   }
 
+  @Test
+  public void validateEagerlyParsesEveryMethodUpFront() {
+    final AtomicInteger lookups = new AtomicInteger();
+    class CountingConverterFactory extends ToStringConverterFactory {
+      @Override
+      public Converter<ResponseBody, ?> responseBodyConverter(Type type, Annotation[] annotations,
+                                                              Retrofit retrofit) {
+        lookups.incrementAndGet();
+        return super.responseBodyConverter(type, annotations, retrofit);
+      }
+    }
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl(server.url("/"))
+        .addConverterFactory(new CountingConverterFactory())
+        .validateEagerly(true)
+        .build();
+    Service service = retrofit.create(Service.class);
+    int afterCreate = lookups.get();
+    assertThat(afterCreate).isPositive();
+
+    service.getString();
+    service.getBody();
+    service.postString("Hi");
+    assertThat(lookups.get()).isEqualTo(afterCreate);
+  }
+
+  @Test
+  public void validateReportsParseTimePerMethod() {
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl(server.url("/"))
+        .addConverterFactory(new ToStringConverterFactory())
+        .build();
+    Map<Method, Long> report = retrofit.validate(Service.class);
+    assertThat(report.keySet()).containsOnly(Service.class.getDeclaredMethods());
+    for (Long nanos : report.values()) {
+      assertThat(nanos).isGreaterThanOrEqualTo(0L);
+    }
+  }
+
   @Test
   public void callCallAdapterAddedByDefault() {
     Retrofit retrofit = new Retrofit.Builder()
@@ -367,6 +462,147 @@ public final class RetrofitTest {
 //    assertThat(annotations).hasAtLeastOneElementOfType(Annotated.Foo.class);
 //  }
 
+  @Test
+  public void virtualThreadsAdaptsDirectReturnTypes() throws Exception {
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl(server.url("/"))
+        .addConverterFactory(new ToStringConverterFactory())
+        .virtualThreads(true)
+        .build();
+    BlockingService service = retrofit.create(BlockingService.class);
+
+    server.enqueue(new MockResponse().setBody("Hi"));
+    assertThat(service.body()).isEqualTo("Hi");
+
+    server.enqueue(new MockResponse().setResponseCode(404).setBody("Nope"));
+    Response<String> response = service.response();
+    assertThat(response.code()).isEqualTo(404);
+    assertThat(response.errorBody().string()).isEqualTo("Nope");
+
+    server.enqueue(new MockResponse().setResponseCode(500));
+    try {
+      service.body();
+      fail();
+    } catch (HttpException e) {
+      assertThat(e.code()).isEqualTo(500);
+    }
+  }
+
+  @Test
+  public void virtualThreadsDeliversCallbacksWithoutDispatcherPool() throws Exception {
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl(server.url("/"))
+        .addConverterFactory(new ToStringConverterFactory())
+        .virtualThreads(true)
+        .build();
+    BlockingService service = retrofit.create(BlockingService.class);
+
+    server.enqueue(new MockResponse().setBody("Hi"));
+    final AtomicBoolean daemonThread = new AtomicBoolean();
+    final AtomicReference<String> body = new AtomicReference<>();
+    final CountDownLatch latch = new CountDownLatch(1);
+    service.call().enqueue(new Callback<String>() {
+      @Override public void onResponse(Call<String> call, Response<String> response) {
+        // OkHttp's own dispatcher threads are not daemons; virtual and fallback threads are.
+        daemonThread.set(Thread.currentThread().isDaemon());
+        body.set(response.body());
+        latch.countDown();
+      }
+
+      @Override public void onFailure(Call<String> call, Throwable t) {
+        latch.countDown();
+      }
+    });
+    assertTrue(latch.await(10, TimeUnit.SECONDS));
+    assertThat(body.get()).isEqualTo("Hi");
+    assertThat(daemonThread.get()).isTrue();
+  }
+
+  @Test
+  public void virtualThreadsKeepsProvidedClientsDispatcher() throws Exception {
+    final AtomicInteger dispatched = new AtomicInteger();
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    Dispatcher dispatcher = new Dispatcher(new AbstractExecutorService() {
+      @Override public void execute(Runnable command) {
+        dispatched.incrementAndGet();
+        executor.execute(command);
+      }
+
+      @Override public void shutdown() {
+        executor.shutdown();
+      }
+
+      @Override public List<Runnable> shutdownNow() {
+        return executor.shutdownNow();
+      }
+
+      @Override public boolean isShutdown() {
+        return executor.isShutdown();
+      }
+
+      @Override public boolean isTerminated() {
+        return executor.isTerminated();
+      }
+
+      @Override public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+      }
+    });
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl(server.url("/"))
+        .client(new OkHttpClient.Builder().dispatcher(dispatcher).build())
+        .addConverterFactory(new ToStringConverterFactory())
+        .virtualThreads(true)
+        .build();
+    BlockingService service = retrofit.create(BlockingService.class);
+
+    server.enqueue(new MockResponse().setBody("Hi"));
+    final CountDownLatch latch = new CountDownLatch(1);
+    service.call().enqueue(new Callback<String>() {
+      @Override public void onResponse(Call<String> call, Response<String> response) {
+        latch.countDown();
+      }
+
+      @Override public void onFailure(Call<String> call, Throwable t) {
+        latch.countDown();
+      }
+    });
+    assertTrue(latch.await(10, TimeUnit.SECONDS));
+    assertThat(dispatched.get()).isEqualTo(1);
+    executor.shutdown();
+  }
+
+  @Test
+  public void directReturnTypeRequiresVirtualThreads() {
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl(server.url("/"))
+        .addConverterFactory(new ToStringConverterFactory())
+        .build();
+    BlockingService service = retrofit.create(BlockingService.class);
+    try {
+      service.body();
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage("Unable to create call adapter");
+    }
+  }
+
+  @Test
+  public void virtualThreadsDoesNotAdaptFutures() {
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl(server.url("/"))
+        .addConverterFactory(new ToStringConverterFactory())
+        .virtualThreads(true)
+        .build();
+    FutureMethod example = retrofit.create(FutureMethod.class);
+    try {
+      example.method();
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage("Unable to create call adapter");
+    }
+  }
+
   @Test
   public void customCallAdapterMissingThrows() {
     Retrofit retrofit = new Retrofit.Builder()
@@ -403,6 +639,139 @@ public final class RetrofitTest {
     assertThat(annotations).hasAtLeastOneElementOfType(Annotated.Foo.class);
   }
 
+  @Test
+  public void serviceMethodParsedOncePerRetrofit() throws IOException {
+    final AtomicInteger lookups = new AtomicInteger();
+    class CountingConverterFactory extends Converter.Factory {
+      @Override
+      public Converter<ResponseBody, ?> responseBodyConverter(Type type, Annotation[] annotations,
+                                                              Retrofit retrofit) {
+        lookups.incrementAndGet();
+        return new ToStringConverterFactory().responseBodyConverter(type, annotations, retrofit);
+      }
+    }
+    Retrofit one = new Retrofit.Builder()
+        .baseUrl(server.url("/one/"))
+        .addConverterFactory(new CountingConverterFactory())
+        .build();
+    Retrofit two = new Retrofit.Builder()
+        .baseUrl(server.url("/two/"))
+        .addConverterFactory(new CountingConverterFactory())
+        .build();
+    Service serviceOne = one.create(Service.class);
+    Service serviceTwo = two.create(Service.class);
+
+    serviceOne.getString();
+    int afterFirstCall = lookups.get();
+    assertThat(afterFirstCall).isPositive();
+    serviceOne.getString();
+    assertThat(lookups.get()).isEqualTo(afterFirstCall);
+
+    server.enqueue(new MockResponse().setBody("Hi"));
+    assertThat(serviceTwo.getString().execute().body()).isEqualTo("Hi");
+    assertThat(lookups.get()).isEqualTo(2 * afterFirstCall);
+  }
+
+  @Test
+  public void derivedInstanceSharesParsedMethodsWithParent() throws Exception {
+    final AtomicInteger converterLookups = new AtomicInteger();
+    class CountingConverterFactory extends ToStringConverterFactory {
+      @Override
+      public Converter<ResponseBody, ?> responseBodyConverter(Type type, Annotation[] annotations,
+                                                              Retrofit retrofit) {
+        converterLookups.incrementAndGet();
+        return super.responseBodyConverter(type, annotations, retrofit);
+      }
+    }
+    Retrofit parent = new Retrofit.Builder()
+        .baseUrl(server.url("/a/"))
+        .addConverterFactory(new CountingConverterFactory())
+        .build();
+    Retrofit child = parent.newBuilder().baseUrl(server.url("/b/")).build();
+
+    server.enqueue(new MockResponse());
+    server.enqueue(new MockResponse());
+    parent.create(UrlTemplates.class).encodedRepos("jake").execute();
+    child.create(UrlTemplates.class).encodedRepos("jake").execute();
+    assertEquals("/a/users/jake", server.takeRequest().getPath());
+    assertEquals("/b/users/jake", server.takeRequest().getPath());
+    assertThat(converterLookups.get()).isEqualTo(1);
+
+    Retrofit other = parent.newBuilder().addConverterFactory(new ToStringConverterFactory()).build();
+    other.create(UrlTemplates.class).encodedRepos("jake");
+    assertThat(converterLookups.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void newBuilderDoesNotModifyParentFactories() {
+    Retrofit parent = new Retrofit.Builder()
+        .baseUrl(server.url("/"))
+        .build();
+    int converterFactories = parent.converterFactories().size();
+
+    parent.newBuilder().build();
+    parent.newBuilder().addConverterFactory(new ToStringConverterFactory()).build();
+    assertThat(parent.converterFactories()).hasSize(converterFactories);
+
+    CallMethod example = parent.newBuilder().build().create(CallMethod.class);
+    assertThat(example.getResponseBody()).isNotNull();
+  }
+
+  @Test
+  public void newBuilderKeepsFactoriesOfConstructedInstance() throws Exception {
+    CallAdapter.Factory paths = new CallAdapter.Factory() {
+      @Override
+      public CallAdapter<?, ?> get(Type returnType, Annotation[] annotations, Retrofit retrofit) {
+        if (returnType != String.class) {
+          return null;
+        }
+        return new CallAdapter<String, String>() {
+          @Override public Type responseType() {
+            return String.class;
+          }
+
+          @Override public String adapt(Call<String> call) {
+            return call.request().url().encodedPath();
+          }
+        };
+      }
+    };
+    List<CallAdapter.Factory> callAdapterFactories = new ArrayList<>();
+    callAdapterFactories.add(paths);
+    Retrofit constructed = new Retrofit(server.url("/"), new ArrayList<Converter.Factory>(),
+        new OkHttpClient(), false, callAdapterFactories, null);
+
+    // The only factory is the caller's, not a default that newBuilder() may drop.
+    Retrofit derived = constructed.newBuilder().build();
+    assertThat(derived.create(StringService.class).get()).isEqualTo("/");
+
+    Retrofit empty = new Retrofit(server.url("/"), new ArrayList<Converter.Factory>(),
+        new OkHttpClient(), false, new ArrayList<CallAdapter.Factory>(), null);
+    assertThat(empty.newBuilder().build()).isNotNull();
+  }
+
+  @Test
+  public void resolutionMemoizedAcrossMethodsSharingASignature() {
+    final AtomicInteger converterLookups = new AtomicInteger();
+    class CountingConverterFactory extends ToStringConverterFactory {
+      @Override
+      public Converter<ResponseBody, ?> responseBodyConverter(Type type, Annotation[] annotations,
+                                                              Retrofit retrofit) {
+        converterLookups.incrementAndGet();
+        return super.responseBodyConverter(type, annotations, retrofit);
+      }
+    }
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl(server.url("/"))
+        .addConverterFactory(new CountingConverterFactory())
+        .build();
+    UrlTemplates service = retrofit.create(UrlTemplates.class);
+
+    service.repos("jake", 1, "stars");
+    service.search(1);
+    assertThat(converterLookups.get()).isEqualTo(1);
+  }
+
   @Test
   public void methodAndParameterAnnotationsPassedToRequestBodyConverter() {
     final AtomicReference<Annotation[]> parameterAnnotationsRef = new AtomicReference<>();
@@ -429,72 +798,72 @@ public final class RetrofitTest {
     assertThat(methodAnnotationsRef.get()).hasAtLeastOneElementOfType(POST.class);
   }
 
-//  @Test
-//  public void parameterAnnotationsPassedToStringConverter() {
-//    final AtomicReference<Annotation[]> annotationsRef = new AtomicReference<>();
-//    class MyConverterFactory extends Converter.Factory {
-//      @Override public Converter<?, String> stringConverter(Type type, Annotation[] annotations,
-//          Retrofit retrofit) {
-//        annotationsRef.set(annotations);
-//
-//        return new Converter<Object, String>() {
-//          @Override public String convert(Object value) throws IOException {
-//            return String.valueOf(value);
-//          }
-//        };
-//      }
-//    }
-//    Retrofit retrofit = new Retrofit.Builder()
-//        .baseUrl(server.url("/"))
-//        .addConverterFactory(new MyConverterFactory())
-//        .build();
-//    Annotated annotated = retrofit.create(Annotated.class);
-//    annotated.queryParameter(null); // Trigger internal setup.
-//
-//    Annotation[] annotations = annotationsRef.get();
-//    assertThat(annotations).hasAtLeastOneElementOfType(Annotated.Foo.class);
-//  }
-//
-//  @Test
-//  public void stringConverterCalledForString() {
-//    final AtomicBoolean factoryCalled = new AtomicBoolean();
-//    class MyConverterFactory extends Converter.Factory {
-//      @Override public Converter<?, String> stringConverter(Type type, Annotation[] annotations,
-//          Retrofit retrofit) {
-//        factoryCalled.set(true);
-//        return null;
-//      }
-//    }
-//    Retrofit retrofit = new Retrofit.Builder()
-//        .baseUrl(server.url("/"))
-//        .addConverterFactory(new MyConverterFactory())
-//        .build();
-//    CallMethod service = retrofit.create(CallMethod.class);
-//    Call<ResponseBody> call = service.queryString(null);
-//    assertThat(call).isNotNull();
-//    assertThat(factoryCalled.get()).isTrue();
-//  }
-//
-//  @Test
-//  public void stringConverterReturningNullResultsInDefault() {
-//    final AtomicBoolean factoryCalled = new AtomicBoolean();
-//    class MyConverterFactory extends Converter.Factory {
-//      @Override public Converter<?, String> stringConverter(Type type, Annotation[] annotations,
-//          Retrofit retrofit) {
-//        factoryCalled.set(true);
-//        return null;
-//      }
-//    }
-//    Retrofit retrofit = new Retrofit.Builder()
-//        .baseUrl(server.url("/"))
-//        .addConverterFactory(new MyConverterFactory())
-//        .build();
-//    CallMethod service = retrofit.create(CallMethod.class);
-//    Call<ResponseBody> call = service.queryObject(null);
-//    assertThat(call).isNotNull();
-//    assertThat(factoryCalled.get()).isTrue();
-//  }
-//
+  @Test
+  public void parameterAnnotationsPassedToStringConverter() {
+    final AtomicReference<Annotation[]> annotationsRef = new AtomicReference<>();
+    class MyConverterFactory extends Converter.Factory {
+      @Override public Converter<?, String> stringConverter(Type type, Annotation[] annotations,
+          Retrofit retrofit) {
+        annotationsRef.set(annotations);
+
+        return new Converter<Object, String>() {
+          @Override public String convert(Object value) throws IOException {
+            return String.valueOf(value);
+          }
+        };
+      }
+    }
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl(server.url("/"))
+        .addConverterFactory(new MyConverterFactory())
+        .build();
+    Annotated annotated = retrofit.create(Annotated.class);
+    annotated.queryParameter(null); // Trigger internal setup.
+
+    Annotation[] annotations = annotationsRef.get();
+    assertThat(annotations).hasAtLeastOneElementOfType(Annotated.Foo.class);
+  }
+
+  @Test
+  public void stringConverterCalledForString() {
+    final AtomicBoolean factoryCalled = new AtomicBoolean();
+    class MyConverterFactory extends Converter.Factory {
+      @Override public Converter<?, String> stringConverter(Type type, Annotation[] annotations,
+          Retrofit retrofit) {
+        factoryCalled.set(true);
+        return null;
+      }
+    }
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl(server.url("/"))
+        .addConverterFactory(new MyConverterFactory())
+        .build();
+    CallMethod service = retrofit.create(CallMethod.class);
+    Call<ResponseBody> call = service.queryString(null);
+    assertThat(call).isNotNull();
+    assertThat(factoryCalled.get()).isTrue();
+  }
+
+  @Test
+  public void stringConverterReturningNullResultsInDefault() {
+    final AtomicBoolean factoryCalled = new AtomicBoolean();
+    class MyConverterFactory extends Converter.Factory {
+      @Override public Converter<?, String> stringConverter(Type type, Annotation[] annotations,
+          Retrofit retrofit) {
+        factoryCalled.set(true);
+        return null;
+      }
+    }
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl(server.url("/"))
+        .addConverterFactory(new MyConverterFactory())
+        .build();
+    CallMethod service = retrofit.create(CallMethod.class);
+    Call<ResponseBody> call = service.queryObject(null);
+    assertThat(call).isNotNull();
+    assertThat(factoryCalled.get()).isTrue();
+  }
+
 //  @Test
 //  public void missingConverterThrowsOnNonRequestBody() throws IOException {
 //    Retrofit retrofit = new Retrofit.Builder()
@@ -538,6 +907,55 @@ public final class RetrofitTest {
 //    }
 //  }
 //
+  @Test
+  public void bodyUsesResolvedRequestBodyConverter() throws Exception {
+    class NumberConverterFactory extends Converter.Factory {
+      @Override
+      public Converter<?, RequestBody> requestBodyConverter(Type type,
+          Annotation[] parameterAnnotations, Annotation[] methodAnnotations, Retrofit retrofit) {
+        if (type != Integer.class) {
+          return null;
+        }
+        return new Converter<Integer, RequestBody>() {
+          @Override public RequestBody convert(Integer value) {
+            return RequestBody.create(MediaType.parse("text/plain"), "#" + value);
+          }
+        };
+      }
+    }
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl(server.url("/"))
+        .addConverterFactory(new NumberConverterFactory())
+        .build();
+    Bodies service = retrofit.create(Bodies.class);
+
+    server.enqueue(new MockResponse());
+    service.number(42).execute();
+    assertThat(server.takeRequest().getBody().readUtf8()).isEqualTo("#42");
+  }
+
+  @Test
+  public void bodyWithoutConverterThrows() {
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl(server.url("/"))
+        .build();
+    Bodies service = retrofit.create(Bodies.class);
+    try {
+      service.number(42);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage("Unable to create @Body converter for class java.lang.Integer (parameter #1)\n"
+          + "    for method Bodies.number");
+    }
+    try {
+      service.unannotated(42);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage("No Retrofit annotation found. (parameter #1)\n"
+          + "    for method Bodies.unannotated");
+    }
+  }
+
   @Test
   public void requestBodyOutgoingAllowed() throws IOException {
     Retrofit retrofit = new Retrofit.Builder()
@@ -1378,6 +1796,80 @@ public final class RetrofitTest {
     verifyNoMoreInteractions(executor);
   }
 
+  @Test
+  public void relativeUrlTemplateExpanded() throws Exception {
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl(server.url("/"))
+        .build();
+    UrlTemplates service = retrofit.create(UrlTemplates.class);
+
+    server.enqueue(new MockResponse());
+    server.enqueue(new MockResponse());
+    server.enqueue(new MockResponse());
+
+    service.repos("jake", 2, "stars").execute();
+    assertEquals("/users/jake/repos?page=2&sort=stars", server.takeRequest().getPath());
+    service.repos("jake", null, "stars").execute();
+    assertEquals("/users/jake/repos?sort=stars", server.takeRequest().getPath());
+    service.search(3).execute();
+    assertEquals("/search?q=all&page=3", server.takeRequest().getPath());
+  }
+
+  @Test
+  public void argumentFreeMethodReusesPrebuiltRequest() throws Exception {
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl(server.url("/"))
+        .build();
+    CallMethod example = retrofit.create(CallMethod.class);
+
+    okhttp3.Request first = example.getResponseBody().request();
+    okhttp3.Request second = example.getResponseBody().request();
+    assertThat(second).isSameAs(first);
+    assertThat(example.getResponseBody().clone().request()).isSameAs(first);
+
+    server.enqueue(new MockResponse().setBody("Hi"));
+    assertThat(example.getResponseBody().execute().body().string()).isEqualTo("Hi");
+    assertEquals("/", server.takeRequest().getPath());
+  }
+
+  @Test
+  public void relativeUrlValuesEncodedIntoBaseUrl() throws Exception {
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl(server.url("/api/"))
+        .build();
+    UrlTemplates service = retrofit.create(UrlTemplates.class);
+
+    server.enqueue(new MockResponse());
+    server.enqueue(new MockResponse());
+
+    service.repos("a/b c%", null, "x&y").execute();
+    assertEquals("/users/a%2Fb%20c%25/repos?sort=x%26y", server.takeRequest().getPath());
+    service.encodedRepos("a%2Fb").execute();
+    assertEquals("/api/users/a%2Fb", server.takeRequest().getPath());
+  }
+
+  @Test
+  public void relativeUrlTemplateValidatedAtParse() {
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl(server.url("/"))
+        .build();
+    UrlTemplates service = retrofit.create(UrlTemplates.class);
+    try {
+      service.unknownPath("jake");
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage("URL \"/users/{id}\" does not contain \"{name}\".\n"
+          + "    for method UrlTemplates.unknownPath");
+    }
+    try {
+      service.unboundPath();
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage("URL \"/users/{id}\" has no @Path parameter for \"{id}\".\n"
+          + "    for method UrlTemplates.unboundPath");
+    }
+  }
+
   /** Confirm that Retrofit encodes parameters when the call is executed, and not earlier. */
   @Test
   public void argumentCapture() throws Exception {
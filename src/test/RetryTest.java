@@ -0,0 +1,184 @@
+package test;
+
+import main.retrofit.Call;
+import main.retrofit.Callback;
+import main.retrofit.Response;
+import main.retrofit.Retrofit;
+import main.retrofit.ToStringConverterFactory;
+import main.retrofit.okhttp.Body;
+import main.retrofit.okhttp.GET;
+import main.retrofit.okhttp.POST;
+import main.retrofit.okhttp.Retry;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.SocketPolicy;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public final class RetryTest {
+    @Rule
+    public final MockWebServer server = new MockWebServer();
+
+    interface Service {
+        @GET("/")
+        @Retry(baseDelayMillis = 10, maxDelayMillis = 50)
+        Call<String> retried();
+
+        @GET("/")
+        @Retry(baseDelayMillis = 5000, maxDelayMillis = 5000)
+        Call<String> slowBackoff();
+
+        @GET("/")
+        @Retry(maxAttempts = 0)
+        Call<String> noAttempts();
+
+        @POST("/")
+        @Retry
+        Call<String> notIdempotent(@Body String body);
+    }
+
+    private Service service(double retryBudget) {
+        Retrofit retrofit = new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .addConverterFactory(new ToStringConverterFactory())
+                .retryBudget(retryBudget)
+                .build();
+        return retrofit.create(Service.class);
+    }
+
+    @Test
+    public void serverErrorIsRetried() throws IOException {
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setResponseCode(502));
+        server.enqueue(new MockResponse().setBody("Hi"));
+
+        Response<String> response = service(0.2).retried().execute();
+        assertThat(response.body()).isEqualTo("Hi");
+        assertThat(server.getRequestCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void ioFailureIsRetried() throws IOException {
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AT_START));
+        server.enqueue(new MockResponse().setBody("Hi"));
+
+        assertThat(service(0.2).retried().execute().body()).isEqualTo("Hi");
+        assertThat(server.getRequestCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void lastAttemptIsDelivered() throws IOException {
+        for (int i = 0; i < 3; i++) {
+            server.enqueue(new MockResponse().setResponseCode(503));
+        }
+
+        Response<String> response = service(0.2).retried().execute();
+        assertThat(response.code()).isEqualTo(503);
+        assertThat(server.getRequestCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void clientErrorIsNotRetried() throws IOException {
+        server.enqueue(new MockResponse().setResponseCode(404));
+
+        assertThat(service(0.2).retried().execute().code()).isEqualTo(404);
+        assertThat(server.getRequestCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void exhaustedBudgetSkipsRetry() throws IOException {
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setBody("Hi"));
+
+        assertThat(service(0).retried().execute().code()).isEqualTo(503);
+        assertThat(server.getRequestCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void callbackSeesEveryAttempt() throws InterruptedException {
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setBody("Hi"));
+        RecordingCallback callback = new RecordingCallback();
+
+        service(0.2).retried().enqueue(callback);
+        assertThat(callback.take()).isEqualTo("attempt 1");
+        assertThat(callback.take()).isEqualTo("retry 1 after 503");
+        assertThat(callback.take()).isEqualTo("attempt 2");
+        assertThat(callback.take()).isEqualTo("Hi");
+    }
+
+    @Test
+    public void cancelDuringBackoff() throws InterruptedException {
+        server.enqueue(new MockResponse().setResponseCode(503));
+        RecordingCallback callback = new RecordingCallback();
+        Call<String> call = service(0.2).slowBackoff();
+
+        call.enqueue(callback);
+        assertThat(callback.take()).isEqualTo("attempt 1");
+        assertThat(callback.take()).isEqualTo("retry 1 after 503");
+        call.cancel();
+        assertThat(callback.take()).isEqualTo("failure Canceled");
+        assertThat(server.getRequestCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void retryRequiresGet() {
+        try {
+            service(0.2).notIdempotent("Hi");
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat(e).hasMessage("@Retry is only allowed on @GET methods.\n"
+                    + "    for method Service.notIdempotent");
+        }
+    }
+
+    @Test
+    public void retryRequiresAnAttempt() {
+        try {
+            service(0.2).noAttempts();
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat(e).hasMessage("@Retry maxAttempts must be at least 1.\n"
+                    + "    for method Service.noAttempts");
+        }
+    }
+
+    static final class RecordingCallback implements Callback<String> {
+        final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+
+        @Override
+        public void onAttempt(Call<String> call, int attempt) {
+            events.add("attempt " + attempt);
+        }
+
+        @Override
+        public void onRetry(Call<String> call, int attempt, Response<String> response, Throwable failure,
+                            long delayMillis) {
+            events.add("retry " + attempt + " after " + (response != null ? response.code() : failure));
+        }
+
+        @Override
+        public void onResponse(Call<String> call, Response<String> response) {
+            events.add(response.body());
+        }
+
+        @Override
+        public void onFailure(Call<String> call, Throwable t) {
+            events.add("failure " + t.getMessage());
+        }
+
+        String take() throws InterruptedException {
+            String event = events.poll(10, SECONDS);
+            assertThat(event).isNotNull();
+            return event;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package test;
+
+import main.retrofit.Call;
+import main.retrofit.Retrofit;
+import main.retrofit.processor.ServiceProcessor;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public final class ServiceProcessorTest {
+    @Rule
+    public final MockWebServer server = new MockWebServer();
+    @Rule
+    public final TemporaryFolder temp = new TemporaryFolder();
+
+    interface Service {
+        @main.retrofit.okhttp.GET("/") Call<String> get();
+    }
+
+    @Test
+    public void generatedImplementationReplacesProxy() throws Exception {
+        ClassLoader loader = compile("gen/Greeter.java", ""
+                + "package gen;\n"
+                + "import main.retrofit.Call;\n"
+                + "import main.retrofit.okhttp.*;\n"
+                + "import okhttp3.ResponseBody;\n"
+                + "public interface Greeter {\n"
+                + "  @GET(\"/hello/{name}\") Call<ResponseBody> hello(@Path(\"name\") String name, @Query(\"n\") int n);\n"
+                + "  @GET(\"/\") <T extends ResponseBody> Call<T> bounded() throws java.io.IOException;\n"
+                + "  interface Nested {\n"
+                + "    @POST(\"/\") Call<ResponseBody> post(@Body okhttp3.RequestBody body);\n"
+                + "  }\n"
+                + "}\n");
+        Retrofit retrofit = new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .build();
+
+        Class<?> greeter = loader.loadClass("gen.Greeter");
+        Object service = retrofit.create(greeter);
+        assertThat(Proxy.isProxyClass(service.getClass())).isFalse();
+        assertThat(service.getClass().getName()).isEqualTo("gen.Greeter_RetrofitImpl");
+        assertThat(retrofit.create(loader.loadClass("gen.Greeter$Nested")).getClass().getName())
+                .isEqualTo("gen.Greeter_Nested_RetrofitImpl");
+
+        server.enqueue(new MockResponse().setBody("Hi"));
+        Call<?> call = (Call<?>) greeter.getMethod("hello", String.class, int.class).invoke(service, "jake", 2);
+        assertThat(call.execute().body().toString()).isNotEmpty();
+        assertThat(server.takeRequest().getPath()).isEqualTo("/hello/jake?n=2");
+    }
+
+    @Test
+    public void proxyUsedWithoutGeneratedImplementation() {
+        Retrofit retrofit = new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .build();
+        assertThat(Proxy.isProxyClass(retrofit.create(Service.class).getClass())).isTrue();
+    }
+
+    private ClassLoader compile(String path, String source) throws IOException {
+        File sources = temp.newFolder("sources");
+        File classes = temp.newFolder("classes");
+        File file = new File(sources, path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), source.getBytes(StandardCharsets.UTF_8));
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null)) {
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, null,
+                    Arrays.asList("-classpath", System.getProperty("java.class.path"),
+                            "-d", classes.getPath(), "-s", classes.getPath()),
+                    null, fileManager.getJavaFileObjectsFromFiles(Collections.singletonList(file)));
+            task.setProcessors(Collections.singletonList(new ServiceProcessor()));
+            assertThat(task.call()).isTrue();
+        }
+        return new URLClassLoader(new URL[] {classes.toURI().toURL()}, getClass().getClassLoader());
+    }
+}
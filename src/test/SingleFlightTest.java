@@ -0,0 +1,235 @@
+package test;
+
+import main.retrofit.Call;
+import main.retrofit.Callback;
+import main.retrofit.Response;
+import main.retrofit.Retrofit;
+import main.retrofit.ToStringConverterFactory;
+import main.retrofit.okhttp.GET;
+import main.retrofit.okhttp.Query;
+import main.retrofit.okhttp.SingleFlight;
+import main.retrofit.okhttp.Timeout;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.SocketPolicy;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public final class SingleFlightTest {
+    @Rule
+    public final MockWebServer server = new MockWebServer();
+
+    interface Service {
+        @GET("/")
+        @SingleFlight
+        Call<String> coalesced(@Query("key") String key);
+
+        @GET("/")
+        @SingleFlight
+        @Timeout(300)
+        Call<String> bounded(@Query("key") String key);
+
+        @GET("/")
+        Call<String> plain(@Query("key") String key);
+    }
+
+    private Service service(boolean singleFlight) {
+        Retrofit retrofit = new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .addConverterFactory(new ToStringConverterFactory())
+                .singleFlight(singleFlight)
+                .build();
+        return retrofit.create(Service.class);
+    }
+
+    @Test
+    public void identicalCallsShareOneRequest() throws Exception {
+        Service service = service(false);
+        RecordingCallback callback = new RecordingCallback();
+        for (int i = 0; i < 5; i++) {
+            service.coalesced("hot").enqueue(callback);
+        }
+        server.enqueue(new MockResponse().setBody("Hi"));
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(callback.take()).isEqualTo("Hi");
+        }
+        assertThat(server.getRequestCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void executeJoinsInFlightCall() throws Exception {
+        Service service = service(false);
+        RecordingCallback callback = new RecordingCallback();
+        service.coalesced("hot").enqueue(callback);
+        server.enqueue(new MockResponse().setBody("Hi"));
+
+        assertThat(service.coalesced("hot").execute().body()).isEqualTo("Hi");
+        assertThat(callback.take()).isEqualTo("Hi");
+    }
+
+    @Test
+    public void timedOutLeaderReturnsWhileOthersWait() throws Exception {
+        Service service = service(false);
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            long start = System.nanoTime();
+            Future<?> leader = executor.submit(() -> service.bounded("hot").execute());
+            server.takeRequest();
+            Call<String> joiner = service.coalesced("hot");
+            joiner.enqueue(new RecordingCallback());
+
+            try {
+                leader.get(2, SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertThat(e.getCause()).isInstanceOf(InterruptedIOException.class).hasMessage("timeout");
+            }
+            assertThat(System.nanoTime() - start).isLessThan(SECONDS.toNanos(1));
+            joiner.cancel();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void errorInExecutedFlightIsNotJoinedAgain() throws Exception {
+        final AtomicBoolean broken = new AtomicBoolean(true);
+        OkHttpClient client = new OkHttpClient.Builder()
+                .addInterceptor(chain -> {
+                    if (broken.getAndSet(false)) {
+                        throw new AssertionError("broken");
+                    }
+                    return chain.proceed(chain.request());
+                })
+                .build();
+        Service service = new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .client(client)
+                .addConverterFactory(new ToStringConverterFactory())
+                .build()
+                .create(Service.class);
+        server.enqueue(new MockResponse().setBody("Hi"));
+
+        try {
+            service.coalesced("hot").execute();
+            fail();
+        } catch (AssertionError e) {
+            assertThat(e).hasMessage("broken");
+        }
+        assertThat(service.coalesced("hot").execute().body()).isEqualTo("Hi");
+    }
+
+    @Test
+    public void differentRequestsAreNotShared() throws Exception {
+        Service service = service(false);
+        RecordingCallback callback = new RecordingCallback();
+        service.coalesced("a").enqueue(callback);
+        service.coalesced("b").enqueue(callback);
+        server.enqueue(new MockResponse().setBody("One"));
+        server.enqueue(new MockResponse().setBody("Two"));
+
+        List<Object> bodies = new ArrayList<>();
+        bodies.add(callback.take());
+        bodies.add(callback.take());
+        assertThat(bodies).containsOnly("One", "Two");
+        assertThat(server.getRequestCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void sharedCallSurvivesUntilEveryCallerCancels() throws Exception {
+        Service service = service(false);
+        RecordingCallback callback = new RecordingCallback();
+        Call<String> first = service.coalesced("hot");
+        Call<String> second = service.coalesced("hot");
+        first.enqueue(callback);
+        second.enqueue(callback);
+
+        first.cancel();
+        assertThat(callback.take()).isInstanceOf(Throwable.class);
+        server.enqueue(new MockResponse().setBody("Hi"));
+        assertThat(callback.take()).isEqualTo("Hi");
+        assertThat(server.getRequestCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void abandonedFlightIsNotJoined() throws Exception {
+        Service service = service(false);
+        RecordingCallback callback = new RecordingCallback();
+        Call<String> abandoned = service.coalesced("hot");
+        abandoned.enqueue(callback);
+        abandoned.cancel();
+        assertThat(callback.take()).isInstanceOf(Throwable.class);
+
+        server.enqueue(new MockResponse().setBody("Stale"));
+        server.enqueue(new MockResponse().setBody("Fresh"));
+        // The canceled flight may or may not have reached the server, but it is never shared.
+        String body = service.coalesced("hot").execute().body();
+        assertThat(body).isIn("Stale", "Fresh");
+        assertThat(callback.events).isEmpty();
+    }
+
+    @Test
+    public void unannotatedMethodsAreNotShared() throws Exception {
+        Service service = service(false);
+        RecordingCallback callback = new RecordingCallback();
+        service.plain("hot").enqueue(callback);
+        service.plain("hot").enqueue(callback);
+        server.enqueue(new MockResponse().setBody("One"));
+        server.enqueue(new MockResponse().setBody("Two"));
+
+        callback.take();
+        callback.take();
+        assertThat(server.getRequestCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void builderOptionSharesEveryGet() throws Exception {
+        Service service = service(true);
+        RecordingCallback callback = new RecordingCallback();
+        service.plain("hot").enqueue(callback);
+        service.plain("hot").enqueue(callback);
+        server.enqueue(new MockResponse().setBody("Hi"));
+
+        assertThat(callback.take()).isEqualTo("Hi");
+        assertThat(callback.take()).isEqualTo("Hi");
+        assertThat(server.getRequestCount()).isEqualTo(1);
+    }
+
+    static final class RecordingCallback implements Callback<String> {
+        final BlockingQueue<Object> events = new LinkedBlockingQueue<>();
+
+        @Override
+        public void onResponse(Call<String> call, Response<String> response) {
+            events.add(response.body());
+        }
+
+        @Override
+        public void onFailure(Call<String> call, Throwable t) {
+            events.add(t);
+        }
+
+        Object take() throws InterruptedException {
+            Object event = events.poll(10, SECONDS);
+            assertThat(event).isNotNull();
+            return event;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package test;
+
+import main.retrofit.Call;
+import main.retrofit.Callback;
+import main.retrofit.Response;
+import main.retrofit.Retrofit;
+import main.retrofit.ToStringConverterFactory;
+import main.retrofit.okhttp.GET;
+import main.retrofit.okhttp.Retry;
+import main.retrofit.okhttp.Timeout;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.SocketPolicy;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public final class TimeoutTest {
+    @Rule
+    public final MockWebServer server = new MockWebServer();
+
+    interface Service {
+        @GET("/")
+        @Timeout(100)
+        Call<String> bounded();
+
+        @GET("/")
+        @Timeout(value = 2, unit = SECONDS)
+        Call<String> patient();
+
+        @GET("/")
+        @Timeout(0)
+        Call<String> unbounded();
+
+        @GET("/")
+        Call<String> unannotated();
+
+        @GET("/")
+        @Timeout(value = 10, unit = SECONDS)
+        Call<String> perCall(@Timeout long timeoutMillis);
+
+        @GET("/")
+        Call<String> invalid(@Timeout int timeout);
+
+        @GET("/")
+        @Timeout(500)
+        @Retry(maxAttempts = 5, baseDelayMillis = 0, maxDelayMillis = 0)
+        Call<String> retried();
+    }
+
+    private Service service(long callTimeoutMillis) {
+        Retrofit retrofit = new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .addConverterFactory(new ToStringConverterFactory())
+                .callTimeout(callTimeoutMillis, MILLISECONDS)
+                .build();
+        return retrofit.create(Service.class);
+    }
+
+    private static void assertTimesOut(Call<String> call) throws IOException {
+        long start = System.nanoTime();
+        try {
+            call.execute();
+            fail();
+        } catch (InterruptedIOException e) {
+            assertThat(e).hasMessage("timeout");
+        }
+        assertThat(System.nanoTime() - start).isLessThan(TimeUnit.SECONDS.toNanos(2));
+        assertThat(call.isCanceled()).isTrue();
+    }
+
+    @Test
+    public void executeTimesOut() throws IOException {
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+
+        assertTimesOut(service(0).bounded());
+    }
+
+    @Test
+    public void slowBodyTimesOut() throws IOException {
+        server.enqueue(new MockResponse().setBody("Hello").throttleBody(1, 1, SECONDS));
+
+        assertTimesOut(service(0).bounded());
+    }
+
+    @Test
+    public void enqueueTimesOut() throws InterruptedException {
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final CountDownLatch latch = new CountDownLatch(1);
+        service(0).bounded().enqueue(new Callback<String>() {
+            @Override
+            public void onResponse(Call<String> call, Response<String> response) {
+                latch.countDown();
+            }
+
+            @Override
+            public void onFailure(Call<String> call, Throwable t) {
+                failure.set(t);
+                latch.countDown();
+            }
+        });
+        assertThat(latch.await(2, SECONDS)).isTrue();
+        assertThat(failure.get()).isInstanceOf(InterruptedIOException.class).hasMessage("timeout");
+    }
+
+    @Test
+    public void deadlineSpansEveryAttempt() throws IOException {
+        // Each attempt fits the deadline on its own; all five together do not.
+        for (int i = 0; i < 5; i++) {
+            server.enqueue(new MockResponse().setResponseCode(503).setBody("Busy").setBodyDelay(200, MILLISECONDS));
+        }
+
+        assertTimesOut(service(0).retried());
+        assertThat(server.getRequestCount()).isLessThan(5);
+    }
+
+    @Test
+    public void fastCallIsNotTimedOut() throws Exception {
+        server.enqueue(new MockResponse().setBody("Hi"));
+
+        Call<String> call = service(0).bounded();
+        assertThat(call.execute().body()).isEqualTo("Hi");
+        // Past the deadline, which was disarmed when the call finished.
+        Thread.sleep(300);
+        assertThat(call.isCanceled()).isFalse();
+    }
+
+    @Test
+    public void parameterSetsDeadline() throws IOException {
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+
+        assertTimesOut(service(0).perCall(100L));
+    }
+
+    @Test
+    public void builderSetsDefaultDeadline() throws IOException {
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+
+        assertTimesOut(service(100).unannotated());
+    }
+
+    @Test
+    public void annotationOverridesBuilder() throws IOException {
+        server.enqueue(new MockResponse().setBody("Hi").setBodyDelay(300, MILLISECONDS));
+        server.enqueue(new MockResponse().setBody("Hi").setBodyDelay(300, MILLISECONDS));
+        Service service = service(100);
+
+        assertThat(service.patient().execute().body()).isEqualTo("Hi");
+        assertThat(service.unbounded().execute().body()).isEqualTo("Hi");
+    }
+
+    @Test
+    public void parameterTypeMustBeLong() {
+        try {
+            service(0).invalid(1);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat(e).hasMessage("@Timeout parameter type must be long or Long. (parameter #1)\n"
+                    + "    for method Service.invalid");
+        }
+    }
+}